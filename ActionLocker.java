@@ -4,6 +4,9 @@
  * The actions are references by ACTION_*-constants. If a special flag 
  * should be referenced, simply use: ACTION_OWNED_FLAGS + idOfTheFlag
  * 
+ * Every action stores the tick at which its lock expires, so tick() does
+ * not have to touch the counters of all actions.
+ * 
  * @author Oskar Kirmis <kirmis@st.ovgu.de>
  */
 final public class ActionLocker
@@ -15,11 +18,14 @@ final public class ActionLocker
     public static final int ACTION_ESCAPE = 2;
     public static final int ACTION_OWNED_FLAGS = 3;
     
-    // Registered actions which can be locked
+    // Registered actions which can be locked (tick at which the lock expires)
     private int[] m_registeredActions = null;
     
+    // Number of ticks since initialization
+    private int m_now = 0;
+    
     /**
-     * Initialize the action locker (every counter is set to 0)
+     * Initialize the action locker (no action is locked)
      * 
      * @param[in] numFlags Number of flags to capture in the game
      */
@@ -28,23 +34,20 @@ final public class ActionLocker
         this.m_registeredActions = new int[ 
                                     ActionLocker.ACTION_OWNED_FLAGS + numFlags 
                                 ];
-        // Reset all counters
+        // Reset all expiry ticks
         for( int i = 0; i < this.m_registeredActions.length; ++i )
             this.m_registeredActions[ i ] = 0;
+        this.m_now = 0;
     }
     
     /**
-     * Decrease all counters that are greater zero. This method should always
-     * be called when the think-method is called.
+     * Advance the current tick, so locks expiring at it end. This method
+     * should always be called when the think-method is called.
      */
     public void tick()
     {
-        for( int i = 0; i < this.m_registeredActions.length; ++i )
-        {
-            // Count down state for locked actions
-            if( this.m_registeredActions[ i ] > 0 )
-                --this.m_registeredActions[ i ];
-        }
+        // Counting time is enough, locks expire by themselves
+        ++this.m_now;
     }
     
     /**
@@ -57,11 +60,11 @@ final public class ActionLocker
     {
         // Some preconditions
         assert this.m_registeredActions.length > actionID : "Invalid action given: " + actionID;
-        assert this.m_registeredActions[ actionID ] == 0  : "Couter for action " + actionID + " is not 0!";
+        assert !isLocked( actionID )                      : "Couter for action " + actionID + " is not 0!";
         assert ticks >= 0                                 : "Invalid number of ticks: " + ticks;
         
         // Set "timer"
-        this.m_registeredActions[ actionID ] = ticks;
+        this.m_registeredActions[ actionID ] = this.m_now + ticks;
     }
     
     /**
@@ -74,7 +77,7 @@ final public class ActionLocker
     {
         assert this.m_registeredActions.length > actionID : "Invalid action given: " + actionID;
         
-        // If required ticks is greater zero, the action is still locked
-        return this.m_registeredActions[ actionID ] > 0;
+        // Locked until the current tick reaches the expiry tick
+        return this.m_registeredActions[ actionID ] - this.m_now > 0;
     }
 }
\ No newline at end of file
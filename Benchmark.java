@@ -0,0 +1,687 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Scaling benchmark of the bot with regression gates
+ *
+ * Sweeps the number of zombies (10 .. 100k) and the number of flags
+ * (4 .. 10k) through GeneralPurpose (everything think() does except
+ * reading the game's objects: snapshot incl. spatial indices and the
+ * speculation of the next tick, DecisionEngine.decide() and the flag
+ * event worker) and through the ZombiesInRangeCache alone. Worlds are
+ * simulated without the game: zombies walk randomly, the player follows
+ * its own movements and captures flags, other players capture flags now
+ * and then.
+ *
+ * The whole sweep is run WARMUP_ROUNDS times without measuring (JIT
+ * compilation of all paths), then it is measured ROUNDS times. Rounds
+ * measure all cases one after the other, so a busy phase of the machine
+ * slows down one round instead of all measurements of one case. For
+ * every case the time and the bytes allocated per tick are measured, for
+ * every sweep the exponent of the complexity curve is fitted (time ~ n^k
+ * over the larger sizes of the sweep). Reported and written to the
+ * baseline are the medians over the rounds and the exponents fitted to
+ * the medians. Times are compared relative to a calibration loop measured
+ * in every round, which takes out most of the difference between
+ * machines.
+ *
+ * The results are compared with the checked-in baseline file; the
+ * benchmark fails (exit code 1) if
+ *    - the allocation per tick exceeds the baseline by ALLOC_TOLERANCE
+ *    - the time per tick exceeds the baseline by TIME_TOLERANCE
+ *    - a fitted exponent exceeds the baseline by EXPONENT_TOLERANCE
+ *      or is above MAX_EXPONENT (quadratic paths)
+ * Times and exponents are noisy, so they are handled alike: they only
+ * fail if every round exceeds the limit (the time of every round and the
+ * exponent fitted to every round). If only the median does, the case is
+ * reported as a note.
+ *
+ * Usage: java -cp <core>:. Benchmark [--update] [baseline file]
+ *    --update writes the measured values as the new baseline
+ *
+ * @note The map grows with the number of objects, so the density stays
+ *       the same and a cached range query costs about the same at every
+ *       size (cache exponent ~0). The flag sweep is not monotonic: with
+ *       few flags the target is far away and planning the path costs
+ *       more than the additional flags.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+public class Benchmark
+{
+    //! Default baseline file (relative to the working directory)
+    static final String BASELINE_FILE = "benchmark_baseline.txt";
+
+    //! Zombie counts of the zombie sweep (with SWEEP_FLAGS flags)
+    static final int[] ZOMBIE_COUNTS = { 10, 100, 1000, 10000, 100000 };
+    //! Flag counts of the flag sweep (with SWEEP_ZOMBIES zombies)
+    static final int[] FLAG_COUNTS = { 4, 40, 400, 4000, 10000 };
+    static final int SWEEP_FLAGS = 40;
+    static final int SWEEP_ZOMBIES = 1000;
+
+    //! Number of sizes (largest ones) the complexity curve is fitted to
+    static final int FIT_POINTS = 3;
+
+    //! Discarded rounds of the whole sweep (JIT compilation of all paths)
+    static final int WARMUP_ROUNDS = 2;
+    //! Measured rounds of the whole sweep
+    static final int ROUNDS = 5;
+    //! Ticks simulated per case before measuring (route start, path searches)
+    static final int WARMUP_TICKS = 200;
+    //! Measured ticks per case and round (the median tick counts)
+    static final int MEASURE_TICKS = 100;
+
+    //! Range queries per tick in the cache benchmark and distinct query positions
+    static final int CACHE_QUERIES = 2048;
+    static final int CACHE_POSITIONS = 128;
+
+    //! Allowed factor on the baseline time per tick (relative to the calibration)
+    static final double TIME_TOLERANCE = Double.parseDouble( System.getProperty( "bench.timeTolerance", "1.5" ) );
+    //! Size of the calibration workload and number of its repetitions
+    static final int CALIBRATION_SIZE = 1 << 16;
+    static final int CALIBRATION_REPEATS = 51;
+    //! Allowed factor and absolute slack on the baseline allocation per tick
+    static final double ALLOC_TOLERANCE = 1.25;
+    static final long ALLOC_SLACK_BYTES = 4096;
+    //! Allowed increase of a fitted exponent
+    static final double EXPONENT_TOLERANCE = 0.25;
+    //! Fitted exponents above this are always a failure
+    static final double MAX_EXPONENT = 1.5;
+
+    //! Thread bean with allocation counters (null if not supported)
+    private static com.sun.management.ThreadMXBean s_threads = null;
+
+    //! Values of every measured round (key -> value per round) in the order of measurement
+    private static final Map<String, double[]> s_rounds = new LinkedHashMap<String, double[]>();
+    //! Medians over the rounds and exponents fitted to them (key -> value)
+    private static final Map<String, Double> s_results = new LinkedHashMap<String, Double>();
+
+    //! Result of the last case
+    private static double s_nanos = 0;
+    private static double s_bytes = 0;
+
+    //! Tick counter over all cases, so a speculation never matches another case
+    private static int s_tick = 0;
+
+    public static void main( String[] args ) throws IOException
+    {
+        boolean update = false;
+        String file = BASELINE_FILE;
+        for( String arg : args )
+        {
+            if( arg.equals( "--update" ) )
+                update = true;
+            else
+                file = arg;
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if( threads instanceof com.sun.management.ThreadMXBean
+            && ( (com.sun.management.ThreadMXBean)threads ).isThreadAllocatedMemorySupported() )
+        {
+            s_threads = (com.sun.management.ThreadMXBean)threads;
+            s_threads.setThreadAllocatedMemoryEnabled( true );
+        }
+
+        // Discarded rounds, so every path is compiled before anything is measured
+        System.out.println( "Warming up..." );
+        for( int r = 0; r < WARMUP_ROUNDS; ++r )
+            sweep( -1 );
+
+        for( int r = 0; r < ROUNDS; ++r )
+        {
+            System.out.println( "Round " + ( r + 1 ) + " of " + ROUNDS + "..." );
+            sweep( r );
+        }
+        summarize();
+
+        if( update )
+        {
+            writeBaseline( file );
+            System.out.println( "Baseline written to " + file + "." );
+            return;
+        }
+
+        Map<String, Double> baseline = readBaseline( file );
+        if( baseline == null )
+        {
+            System.out.println( "No baseline found (" + file + "), run with --update to create one." );
+            return;
+        }
+
+        if( !compare( baseline ) )
+        {
+            System.out.println( "Benchmark failed." );
+            System.exit( 1 );
+        }
+        System.out.println( "Benchmark passed." );
+    }
+
+    /**
+     * Run the calibration and all cases of the sweeps once
+     *
+     * @param round Number of the measured round or -1 to discard the results
+     */
+    private static void sweep( int round )
+    {
+        double calibration = calibrate();
+        if( round >= 0 )
+            rounds( "calibration.nanos" )[ round ] = calibration;
+
+        // Zombie sweep
+        for( int i = 0; i < ZOMBIE_COUNTS.length; ++i )
+        {
+            benchmarkThink( ZOMBIE_COUNTS[ i ], SWEEP_FLAGS );
+            record( "think.zombies." + ZOMBIE_COUNTS[ i ], round );
+
+            benchmarkCache( ZOMBIE_COUNTS[ i ] );
+            record( "cache.zombies." + ZOMBIE_COUNTS[ i ], round );
+        }
+
+        // Flag sweep
+        for( int i = 0; i < FLAG_COUNTS.length; ++i )
+        {
+            benchmarkThink( SWEEP_ZOMBIES, FLAG_COUNTS[ i ] );
+            record( "think.flags." + FLAG_COUNTS[ i ], round );
+        }
+    }
+
+    /**
+     * Take the medians over the rounds, fit the exponents and print the results
+     */
+    private static void summarize()
+    {
+        for( Map.Entry<String, double[]> e : s_rounds.entrySet() )
+            s_results.put( e.getKey(), median( e.getValue() ) );
+
+        fit( "fit.think.zombies", "think.zombies.", ZOMBIE_COUNTS );
+        fit( "fit.cache.zombies", "cache.zombies.", ZOMBIE_COUNTS );
+        fit( "fit.think.flags", "think.flags.", FLAG_COUNTS );
+
+        for( Map.Entry<String, double[]> e : s_rounds.entrySet() )
+        {
+            String key = e.getKey();
+            double[] values = e.getValue().clone();
+            Arrays.sort( values );
+
+            if( key.startsWith( "fit." ) )
+                System.out.printf( "%-28s n^%.2f (rounds n^%.2f .. n^%.2f)%n",
+                                   key, s_results.get( key ), values[ 0 ], values[ values.length - 1 ] );
+            else if( key.endsWith( ".nanos" ) )
+            {
+                String name = key.substring( 0, key.length() - ".nanos".length() );
+                Double bytes = s_results.get( name + ".bytes" );
+                System.out.printf( "%-28s %12.1f us/tick (rounds %.1f .. %.1f)%s%n",
+                                   name, s_results.get( key ) / 1000,
+                                   values[ 0 ] / 1000, values[ values.length - 1 ] / 1000,
+                                   bytes == null ? "" : String.format( " %14.0f B/tick", bytes ) );
+            }
+        }
+    }
+
+    /**
+     * Fit the exponent of a sweep to the medians (the result) and to every
+     * round (for the gate)
+     *
+     * @param name Key of the exponent
+     * @param prefix Key prefix of the cases of the sweep
+     * @param sizes Sizes of the sweep
+     */
+    private static void fit( String name, String prefix, int[] sizes )
+    {
+        double[] nanos = new double[ sizes.length ];
+        for( int i = 0; i < sizes.length; ++i )
+            nanos[ i ] = s_results.get( prefix + sizes[ i ] + ".nanos" );
+        s_results.put( name, fitExponent( sizes, nanos ) );
+
+        double[] rounds = new double[ ROUNDS ];
+        for( int r = 0; r < ROUNDS; ++r )
+        {
+            for( int i = 0; i < sizes.length; ++i )
+                nanos[ i ] = s_rounds.get( prefix + sizes[ i ] + ".nanos" )[ r ];
+            rounds[ r ] = fitExponent( sizes, nanos );
+        }
+        s_rounds.put( name, rounds );
+    }
+
+    /**
+     * Measure a fixed workload (arithmetic over an array) to express the
+     * times of the cases relative to the speed of the machine
+     *
+     * @return Median time of the workload
+     */
+    public static double calibrate()
+    {
+        float[] data = new float[ CALIBRATION_SIZE ];
+        long[] samples = new long[ CALIBRATION_REPEATS ];
+        float sink = 0;
+
+        for( int r = 0; r < CALIBRATION_REPEATS; ++r )
+        {
+            long start = System.nanoTime();
+
+            for( int i = 0; i < data.length; ++i )
+                data[ i ] = ( i * 7919 ) % 1000 + sink * 1e-9f;
+            for( int i = 1; i < data.length; ++i )
+                sink += (float)Math.sqrt( data[ i ] * data[ i - 1 ] );
+
+            samples[ r ] = System.nanoTime() - start;
+        }
+
+        // Keep the workload from being optimized away
+        if( sink == 42 )
+            System.out.println();
+
+        return median( samples );
+    }
+
+    /**
+     * Measure a tick of GeneralPurpose (snapshot creation with the
+     * speculation of this tick, the decision and the speculation of the
+     * next tick) in a simulated game. The flag event worker and the
+     * speculation run on their own threads like in the game; the bytes
+     * are the ones allocated by the thinking thread.
+     *
+     * @param numZombies Number of zombies
+     * @param numFlags Number of flags
+     */
+    public static void benchmarkThink( int numZombies, int numFlags )
+    {
+        Random random = new Random( 42 );
+        float radius = mapRadius( numZombies, numFlags );
+
+        float[] zx = new float[ numZombies ], zy = new float[ numZombies ];
+        float[] dx = new float[ numZombies ], dy = new float[ numZombies ];
+        randomPositions( random, zx, zy, numZombies, radius );
+        float[] fx = new float[ numFlags ], fy = new float[ numFlags ];
+        randomPositions( random, fx, fy, numFlags, radius );
+        int[] owner = new int[ numFlags ];
+        Arrays.fill( owner, WorldSnapshot.NO_OWNER );
+
+        GeneralPurpose bot = new GeneralPurpose();
+        float px = 0, py = 0;
+
+        long[] samples = new long[ MEASURE_TICKS ];
+        long bytes = 0;
+        int numSamples = 0;
+        for( int t = 0; t < WARMUP_TICKS + MEASURE_TICKS; ++t )
+        {
+            int tick = s_tick++;
+
+            // New input arrays every tick, like the game does
+            float[] x = new float[ numZombies ], y = new float[ numZombies ];
+            float[] nx = new float[ numZombies ], ny = new float[ numZombies ];
+            for( int i = 0; i < numZombies; ++i )
+            {
+                dx[ i ] = clamp( dx[ i ] + random.nextFloat() * 0.2f - 0.1f );
+                dy[ i ] = clamp( dy[ i ] + random.nextFloat() * 0.2f - 0.1f );
+                zx[ i ] += dx[ i ];
+                zy[ i ] += dy[ i ];
+                x[ i ] = zx[ i ];
+                y[ i ] = zy[ i ];
+                nx[ i ] = zx[ i ] + dx[ i ];
+                ny[ i ] = zy[ i ] + dy[ i ];
+            }
+            int[] flagOwner = new int[ numFlags ];
+            for( int i = 0; i < numFlags; ++i )
+            {
+                float fdx = fx[ i ] - px, fdy = fy[ i ] - py;
+                if( fdx * fdx + fdy * fdy <= 900 )
+                    owner[ i ] = 0;
+                else if( random.nextInt( 2000 ) == 0 )
+                    owner[ i ] = random.nextInt( 3 ) - 1;
+                flagOwner[ i ] = owner[ i ];
+            }
+
+            long startBytes = allocated();
+            long start = System.nanoTime();
+
+            WorldSnapshot world = WorldSnapshot.create( tick, x, y, nx, ny, numZombies,
+                                                        fx, fy, flagOwner, numFlags, tick,
+                                                        SharedWorld.getSpeculation( tick ) );
+            if( t == 0 )
+                bot.startGame( world, 0 );
+            Movement m = bot.decide( world, px, py, 0 );
+            float len = (float)Math.sqrt( m.getX() * m.getX() + m.getY() * m.getY() );
+            bot.finishTick( len );
+
+            long end = System.nanoTime();
+            long endBytes = allocated();
+
+            float scale = len > 1 ? 1 / len : 1;
+            px += m.getX() * scale;
+            py += m.getY() * scale;
+
+            if( t >= WARMUP_TICKS )
+            {
+                samples[ numSamples++ ] = end - start;
+                bytes += endBytes - startBytes;
+            }
+        }
+        bot.m_engine.stopEventWorker( bot.m_state );
+
+        s_nanos = median( samples );
+        s_bytes = bytes / (double)numSamples;
+    }
+
+    /**
+     * Measure a tick of range queries (few distinct positions, so most of
+     * them hit the cache) on the ZombiesInRangeCache
+     *
+     * @param numZombies Number of zombies
+     */
+    public static void benchmarkCache( int numZombies )
+    {
+        Random random = new Random( 7 );
+        float radius = mapRadius( numZombies, 0 );
+
+        float[] zx = new float[ numZombies ], zy = new float[ numZombies ];
+        randomPositions( random, zx, zy, numZombies, radius );
+        WorldSnapshot world = new WorldSnapshot( 0, zx, zy, zx, zy, numZombies,
+                                                 new float[ 0 ], new float[ 0 ], new int[ 0 ], 0, 0 );
+
+        float[] qx = new float[ CACHE_QUERIES ], qy = new float[ CACHE_QUERIES ];
+        int[] range = new int[ CACHE_QUERIES ];
+        for( int q = 0; q < CACHE_QUERIES; ++q )
+        {
+            int p = random.nextInt( CACHE_POSITIONS );
+            qx[ q ] = ( p % 16 - 8 ) * radius / 8;
+            qy[ q ] = ( p / 16 - 4 ) * radius / 4;
+            range[ q ] = random.nextBoolean() ? 30 : 100;
+        }
+
+        ZombiesInRangeCache cache = new ZombiesInRangeCache();
+        ZombieView view = new ZombieView();
+        long[] samples = new long[ MEASURE_TICKS ];
+        long bytes = 0;
+        int numSamples = 0;
+        int sink = 0;
+
+        for( int t = 0; t < WARMUP_TICKS + MEASURE_TICKS; ++t )
+        {
+            long startBytes = allocated();
+            long start = System.nanoTime();
+
+            cache.reset( world );
+            for( int q = 0; q < CACHE_QUERIES; ++q )
+            {
+                if( ( q & 3 ) == 0 )
+                {
+                    cache.getZombiesInRange( qx[ q ], qy[ q ], range[ q ], view );
+                    sink += view.size();
+                }
+                else
+                    sink += cache.countZombiesInRange( qx[ q ], qy[ q ], range[ q ] );
+            }
+
+            long end = System.nanoTime();
+            long endBytes = allocated();
+
+            if( t >= WARMUP_TICKS )
+            {
+                samples[ numSamples++ ] = end - start;
+                bytes += endBytes - startBytes;
+            }
+        }
+
+        // Keep the queries from being optimized away
+        if( sink == 42 )
+            System.out.println();
+
+        s_nanos = median( samples );
+        s_bytes = bytes / (double)numSamples;
+    }
+
+    /**
+     * Fit the exponent k of time ~ n^k (least squares in log-log space)
+     * to the largest FIT_POINTS sizes of a sweep
+     *
+     * @param sizes Sizes of the sweep
+     * @param nanos Measured times
+     *
+     * @return Fitted exponent
+     */
+    public static double fitExponent( int[] sizes, double[] nanos )
+    {
+        double n = 0, sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for( int i = Math.max( 0, sizes.length - FIT_POINTS ); i < sizes.length; ++i )
+        {
+            double x = Math.log( sizes[ i ] ), y = Math.log( Math.max( 1, nanos[ i ] ) );
+            n   += 1;
+            sx  += x;
+            sy  += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+
+        return ( n * sxy - sx * sy ) / ( n * sxx - sx * sx );
+    }
+
+    /**
+     * Median of the measured tick times (robust against GC pauses and
+     * other processes)
+     */
+    private static double median( long[] samples )
+    {
+        Arrays.sort( samples );
+        return samples[ samples.length / 2 ];
+    }
+
+    /**
+     * Median of the values of the rounds
+     */
+    private static double median( double[] values )
+    {
+        double[] sorted = values.clone();
+        Arrays.sort( sorted );
+        return sorted[ sorted.length / 2 ];
+    }
+
+    /**
+     * Store the result of the last case as value of a round
+     *
+     * @param round Number of the round or -1 to discard the result
+     */
+    private static void record( String key, int round )
+    {
+        if( round < 0 )
+            return;
+
+        rounds( key + ".nanos" )[ round ] = s_nanos;
+        rounds( key + ".bytes" )[ round ] = s_bytes;
+    }
+
+    /**
+     * Get the values of the rounds of a key (created on first use)
+     */
+    private static double[] rounds( String key )
+    {
+        double[] values = s_rounds.get( key );
+        if( values == null )
+        {
+            values = new double[ ROUNDS ];
+            s_rounds.put( key, values );
+        }
+        return values;
+    }
+
+    /**
+     * Compare the results with a baseline. Times and exponents only fail
+     * if every round exceeds the limit, a median above it is a note.
+     *
+     * @return true, if nothing regressed
+     */
+    private static boolean compare( Map<String, Double> baseline )
+    {
+        boolean passed = true;
+
+        // Times of every round in the machine speed of the baseline
+        double[] calibration = s_rounds.get( "calibration.nanos" );
+        Double baseCalibration = baseline.get( "calibration.nanos" );
+
+        for( Map.Entry<String, Double> e : s_results.entrySet() )
+        {
+            String key = e.getKey();
+            double value = e.getValue();
+            Double base = baseline.get( key );
+
+            if( key.startsWith( "calibration." ) )
+                continue;
+
+            if( key.endsWith( ".bytes" ) )
+            {
+                // Allocations do not depend on the machine or its load
+                if( base != null && value > base * ALLOC_TOLERANCE + ALLOC_SLACK_BYTES )
+                {
+                    System.out.printf( "REGRESSION %s: %.2f (baseline %.2f), allocates more%n", key, value, base );
+                    passed = false;
+                }
+                continue;
+            }
+
+            double[] rounds = s_rounds.get( key ).clone();
+            double limit;
+            String failure;
+            if( key.startsWith( "fit." ) )
+            {
+                limit = base == null ? MAX_EXPONENT : Math.min( MAX_EXPONENT, base + EXPONENT_TOLERANCE );
+                failure = String.format( Locale.ROOT, "exponent above %.2f", limit );
+            }
+            else if( base == null )
+                continue;
+            else
+            {
+                for( int r = 0; r < rounds.length; ++r )
+                    rounds[ r ] *= baseCalibration == null ? 1 : baseCalibration / calibration[ r ];
+                value = median( rounds );
+                limit = base * TIME_TOLERANCE;
+                failure = String.format( Locale.ROOT, "slower than %.2f (normalized)", limit );
+            }
+
+            Arrays.sort( rounds );
+            if( rounds[ 0 ] > limit )
+            {
+                System.out.printf( "REGRESSION %s: %.2f (baseline %s), %s in every round%n",
+                                   key, value, base == null ? "-" : String.format( Locale.ROOT, "%.2f", base ), failure );
+                passed = false;
+            }
+            else if( value > limit )
+            {
+                System.out.printf( "note %s: %.2f (baseline %s), %s in the median, but not in every round%n",
+                                   key, value, base == null ? "-" : String.format( Locale.ROOT, "%.2f", base ), failure );
+            }
+        }
+
+        return passed;
+    }
+
+    /**
+     * Read a baseline file ("key value" per line, # starts a comment)
+     *
+     * @return Baseline values or null if there is no such file
+     */
+    private static Map<String, Double> readBaseline( String file ) throws IOException
+    {
+        Map<String, Double> baseline = new LinkedHashMap<String, Double>();
+
+        BufferedReader reader;
+        try
+        {
+            reader = new BufferedReader( new FileReader( file ) );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                line = line.trim();
+                if( line.isEmpty() || line.startsWith( "#" ) )
+                    continue;
+
+                String[] parts = line.split( "\\s+" );
+                baseline.put( parts[ 0 ], Double.parseDouble( parts[ 1 ] ) );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return baseline;
+    }
+
+    /**
+     * Write the results as the new baseline
+     */
+    private static void writeBaseline( String file ) throws IOException
+    {
+        PrintWriter writer = new PrintWriter( new FileWriter( file ) );
+        try
+        {
+            writer.println( "# Baseline of Benchmark.java, update with: java Benchmark --update" );
+            writer.println( "# Medians over " + ROUNDS + " rounds. Times (*.nanos) depend on the machine and are" );
+            writer.println( "# compared relative to calibration.nanos; allocations (*.bytes) and exponents (fit.*)" );
+            writer.println( "# do not depend on it" );
+            for( Map.Entry<String, Double> e : s_results.entrySet() )
+                writer.printf( Locale.ROOT, "%s %.2f%n", e.getKey(), e.getValue() );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Radius of the simulated map: grows with the number of objects, so
+     * the density stays in the range of the default maps
+     */
+    private static float mapRadius( int numZombies, int numFlags )
+    {
+        return Math.max( 500, 15 * (float)Math.sqrt( numZombies + numFlags ) );
+    }
+
+    /**
+     * Uniformly distributed positions on a disc around the center
+     */
+    private static void randomPositions( Random random, float[] x, float[] y, int n, float radius )
+    {
+        for( int i = 0; i < n; ++i )
+        {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double dist = Math.sqrt( random.nextDouble() ) * radius;
+            x[ i ] = (float)( Math.cos( angle ) * dist );
+            y[ i ] = (float)( Math.sin( angle ) * dist );
+        }
+    }
+
+    /**
+     * Limit a zombie's speed component
+     */
+    private static float clamp( float v )
+    {
+        return Math.max( -0.5f, Math.min( 0.5f, v ) );
+    }
+
+    /**
+     * Bytes allocated by the current thread so far
+     */
+    private static long allocated()
+    {
+        return s_threads == null ? 0 : s_threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+    }
+}
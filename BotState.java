@@ -0,0 +1,149 @@
+/**
+ * Everything a single bot remembers between two decisions
+ *
+ * The DecisionEngine itself has no state, so one engine can decide for
+ * any number of bots (real ones, simulated ones, rollouts, ...). All
+ * bot specific data - own player information, locks, flag observation,
+ * the path planner and the reused buffers - lives here.
+ * @see DecisionEngine
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class BotState
+{
+    //! Index of our player
+    final int m_playerIndex;
+    //! Current position of our player
+    float m_x = 0;
+    float m_y = 0;
+    //! Current noise radius of our player
+    float m_noiseRadius = 0;
+
+    //! Action locker the bot uses to avoid infinitely repeating an action
+    final ActionLocker m_locker;
+    //! Object that handles changes in flags
+    final FlagObserver m_observer;
+    //! Instance of zombie position cache to increase the bots performance
+    final ZombiesInRangeCache m_cache;
+    //! Path planner used to walk around hordes (null if disabled)
+    final PathPlanner m_planner;
+    //! Tour over the capturable flags (null if disabled)
+    final RoutePlanner m_route;
+    //! Capture statistics of all players (only used by the consumer of the flag events)
+    final OpponentModel m_opponents;
+    //! Thread handling the flag events between the ticks (null: handled within the tick)
+    FlagEventWorker m_eventWorker = null;
+    //! Fused evaluation of the zombies around us (reused every tick)
+    final EscapeKernel m_escape = new EscapeKernel();
+    //! Noise model and safe speed table
+    final SpeedController m_speed = new SpeedController();
+
+    //! Index of the currently selected target flag (-1 if no safe flag was found)
+    int m_targetFlag = -1;
+    //! Number of ticks in a row the flag of the route could not be used
+    int m_routeBlockedTicks = 0;
+    //! Normalized movement towards the target
+    float m_targetX = 0, m_targetY = 0;
+    //! Normalized movement towards the zombies (escape is the opposite direction)
+    float m_escapeX = 0, m_escapeY = 0;
+    //! Factor to specify how "much" the bot tries to escpae
+    float m_escapeFactor = 3.0f;
+    //! Speed the bot currently has (length of the movement vector)
+    float m_currentSpeed = 1.0f;
+    //! Length of the movement we really made last tick (the current noise radius
+    //! belongs to it); set by the engine, overwritten by bots returning another movement
+    float m_lastSpeed = 0;
+
+    //! Flag lock counters and ownership of the last turn (DummyFlagLock mode)
+    final int[] m_lockedFlags;
+    final boolean[] m_lastOwnFlags;
+
+    //! Reused buffers for the batched flag safety query (filled by the flag pass)
+    final float[] m_flagQueryX;
+    final float[] m_flagQueryY;
+    final int[]   m_flagQueryIndex;
+    final int[]   m_flagQueryCounts;
+    final float[] m_flagQueryDistSq;
+    int m_numFlagQueries = 0;
+    //! Flag farthest away from us (-1 if there are no flags)
+    int m_longestFlag = -1;
+    //! Reused output buffer of the path planner
+    final float[] m_waypoint = new float[ 2 ];
+
+    //! Result of the last decision (reused)
+    final Movement m_movement = new Movement();
+
+    /**
+     * Create the state of a bot for a new game
+     *
+     * @param numFlags Number of flags in the game
+     * @param playerIndex Index of our player
+     * @param engine Engine the flag events are reported to
+     * @param planner Path planner of the bot or null to walk straight to the target
+     * @param route Flag tour of the bot or null to always go to the nearest flag
+     */
+    public BotState( int numFlags, int playerIndex, DecisionEngine engine,
+                     PathPlanner planner, RoutePlanner route )
+    {
+        m_playerIndex = playerIndex;
+
+        m_locker = new ActionLocker();
+        m_locker.initialize( numFlags );
+        m_observer = new FlagObserver( numFlags, engine, m_locker );
+        m_cache = new ZombiesInRangeCache();
+        m_planner = planner;
+        m_route = route;
+        m_opponents = new OpponentModel( numFlags );
+
+        m_lockedFlags  = new int[ numFlags ];
+        m_lastOwnFlags = new boolean[ numFlags ];
+
+        m_flagQueryX      = new float[ numFlags ];
+        m_flagQueryY      = new float[ numFlags ];
+        m_flagQueryIndex  = new int[ numFlags ];
+        m_flagQueryCounts = new int[ numFlags ];
+        m_flagQueryDistSq = new float[ numFlags ];
+    }
+
+    /**
+     * Update the information about our own player. Has to be called
+     * before every decision.
+     *
+     * @param x x coordinate of our player
+     * @param y y coordinate of our player
+     * @param noiseRadius Current noise radius of our player
+     */
+    public void setPlayer( float x, float y, float noiseRadius )
+    {
+        m_x = x;
+        m_y = y;
+        m_noiseRadius = noiseRadius;
+    }
+
+    /**
+     * Get the index of the flag chosen as target by the last decision
+     * @return Index of the target flag or -1 if no safe flag was found
+     */
+    public int getTargetFlag()
+    {
+        return m_targetFlag;
+    }
+
+    /**
+     * Get the action locker of the bot
+     * @return The bot's action locker
+     */
+    public ActionLocker getLocker()
+    {
+        return m_locker;
+    }
+
+    /**
+     * Get the result of the last decision
+     * @return Last movement
+     */
+    public Movement getMovement()
+    {
+        return m_movement;
+    }
+}
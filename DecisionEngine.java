@@ -0,0 +1,761 @@
+import core.constants.ZombieConstants;
+
+/**
+ * Decision logic of our bots, independent of the game runtime
+ *
+ * The engine decides on the next movement of a bot only from primitive
+ * inputs: the world snapshot of the tick and the state of the bot. It
+ * does not hold any state itself, so it can be called for thousands of
+ * (simulated) bots and situations, e.g. by benchmarks, tuning tools or
+ * planners. The PlayerController classes only translate between the game
+ * and the engine.
+ *
+ * Two strategies are available:
+ *    - MODE_GENERAL_PURPOSE: the GeneralPurpose bot (nearest safe flag,
+ *      escape from the nearest zombie, speed limited by the nearest zombie)
+ *    - MODE_DUMMY: the DummyFlagLock bot (nearest unlocked flag, escape
+ *      weighted by the zombie distances)
+ * @see BotState
+ * @see Movement
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class DecisionEngine
+{
+    //! Strategy of the GeneralPurpose bot
+    public static final int MODE_GENERAL_PURPOSE = 0;
+    //! Strategy of the DummyFlagLock bot
+    public static final int MODE_DUMMY = 1;
+
+    //! Factor describing the bot's attraction to the current target
+    static final float GREEDINESS = 1.8f;
+    //! Range around a flag in which zombies make it unsafe
+    static final int FLAG_SAFETY_RANGE = (int)( ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS / GREEDINESS );
+    //! Number of planner cells per axis
+    static final int PLANNER_RESOLUTION = 64;
+    //! Additional planner cost of a cell per zombie near it
+    static final int PLANNER_DANGER_WEIGHT = 2;
+    //! Size of the areas whose flags are visited as one group by the route
+    static final float ROUTE_CLUSTER_SIZE = 4.0f * ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS;
+    //! Ticks the flag of the route may be unusable (unsafe, locked) before it is skipped
+    static final int ROUTE_SKIP_TICKS = 20;
+
+    //! Parameters of the DummyFlagLock strategy
+    static final float DUMMY_NOISE_SCALE = 1.1f;
+    static final float DUMMY_ESCAPE_PRIOR = 2.0f;
+    static final float DUMMY_FLAG_PRIOR = 1.0f;
+    static final float DUMMY_ESCAPE_POWER = 2.0f;
+    static final int   DUMMY_FLAG_LOCK_TICKS = 20;
+
+    //! Strategy used by this engine
+    private final int m_mode;
+
+    /**
+     * Create a new engine for the given strategy
+     *
+     * @param mode MODE_GENERAL_PURPOSE or MODE_DUMMY
+     */
+    public DecisionEngine( int mode )
+    {
+        assert mode == MODE_GENERAL_PURPOSE || mode == MODE_DUMMY : "Unknown mode: " + mode;
+
+        m_mode = mode;
+    }
+
+    /**
+     * Create the state of a bot at the start of a game. Everything that
+     * only depends on the static flag positions is prepared here.
+     *
+     * @param world Snapshot of the world at the start of the game
+     * @param playerIndex Index of the bot's player
+     *
+     * @return New bot state
+     */
+    public BotState createState( WorldSnapshot world, int playerIndex )
+    {
+        int numFlags = world.getNumFlags();
+
+        if( m_mode == MODE_DUMMY )
+            return new BotState( numFlags, playerIndex, this, null, null );
+
+        BotState state = new BotState( numFlags, playerIndex, this,
+                new PathPlanner( ZombieConstants.MAP_RADIUS, PLANNER_RESOLUTION,
+                                 ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS,
+                                 PLANNER_DANGER_WEIGHT ),
+                new RoutePlanner( world.getFlagX(), world.getFlagY(), numFlags,
+                                  ROUTE_CLUSTER_SIZE ) );
+
+        state.m_locker.lock( ActionLocker.ACTION_THROW_BOTTLE, 100 );
+
+        return state;
+    }
+
+    /**
+     * Decide on the next movement of a bot. The state has to contain the
+     * current player information (BotState.setPlayer()).
+     *
+     * @param world Snapshot of the current tick
+     * @param state State of the bot (is updated)
+     *
+     * @return The decision (owned by the state, valid until the next call)
+     */
+    public Movement decide( WorldSnapshot world, BotState state )
+    {
+        state.m_movement.clear();
+
+        if( m_mode == MODE_DUMMY )
+            decideDummy( world, state );
+        else
+            decideGeneralPurpose( world, state );
+
+        return state.m_movement;
+    }
+
+    /**
+     * GeneralPurpose strategy: update helpers, then combine the movement
+     * towards the target with the escape movement at a safe speed.
+     */
+    private void decideGeneralPurpose( WorldSnapshot world, BotState state )
+    {
+        // Clean and rebuild cache
+        state.m_cache.reset( world );
+
+        // Let the planner know where the zombies will be
+        if( state.m_planner != null )
+            state.m_planner.updateCosts( world.getZombieNextX(), world.getZombieNextY(),
+                                         world.getNumZombies() );
+
+        // Decrease lock counters...
+        state.m_locker.tick();
+
+        // One pass over the zombies and one over the flags derive everything
+        // the tick needs (the observer handles the new environment on the way)
+        scanZombies( world, state );
+        scanFlags( world, state );
+
+        // calculate reaction based on the environment
+        calculateMovementSpeed( state );
+        calculateMovements( world, state );
+        createMovement( state );
+
+        // Costly reactions to flag events: now or between the ticks
+        if( state.m_eventWorker == null )
+            handleEvents( world, state );
+        else
+            dispatchEvents( world, state );
+    }
+
+    /**
+     * Single pass over the zombies: nearest zombie (escape direction),
+     * nearest predicted zombie position (speed) and the number of zombies
+     * which will be near us.
+     */
+    void scanZombies( WorldSnapshot world, BotState state )
+    {
+        state.m_escape.evaluate( world.getZombieX(), world.getZombieY(),
+                                 world.getZombieNextX(), world.getZombieNextY(),
+                                 world.getNumZombies(), state.m_x, state.m_y,
+                                 ZombieConstants.MAX_PLAYER_VOLUME_RADIUS, 2.0f,
+                                 (int)ZombieConstants.MAX_PLAYER_VOLUME_RADIUS );
+    }
+
+    /**
+     * Single pass over the flags: ownership changes (handled by the
+     * observer), the candidates for the target and the fallback target.
+     */
+    void scanFlags( WorldSnapshot world, BotState state )
+    {
+        float[] flagX = world.getFlagX(), flagY = world.getFlagY();
+        int numCandidates = 0;
+        int longest = -1;
+        float longestSq = -1;
+
+        for( int i = 0; i < world.getNumFlags(); ++i )
+        {
+            // Handlers may lock the flag, so this comes first
+            state.m_observer.check( world, state, i );
+
+            float dx = flagX[ i ] - state.m_x, dy = flagY[ i ] - state.m_y;
+            float dSq = dx * dx + dy * dy;
+            if( dSq > longestSq )
+            {
+                longestSq = dSq;
+                longest = i;
+            }
+
+            // Only look at flags which are currently not locked ( == visited short time ago)
+            if( !state.m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + i ) &&
+                    world.getFlagOwner( i ) != state.m_playerIndex )
+            {
+                state.m_flagQueryX[ numCandidates ]     = flagX[ i ];
+                state.m_flagQueryY[ numCandidates ]     = flagY[ i ];
+                state.m_flagQueryIndex[ numCandidates ] = i;
+                state.m_flagQueryDistSq[ numCandidates ] = dSq;
+                ++numCandidates;
+            }
+        }
+
+        state.m_numFlagQueries = numCandidates;
+        state.m_longestFlag = longest;
+    }
+
+    /**
+     * Adjust speed so that the zombies can't hear us: the fastest speed
+     * whose noise does not reach the nearest predicted zombie position.
+     * @see scanZombies()
+     * @see SpeedController
+     */
+    void calculateMovementSpeed( BotState state )
+    {
+        // Our current noise radius results from the last movement
+        state.m_speed.observe( state.m_lastSpeed, state.m_noiseRadius );
+
+        state.m_currentSpeed = state.m_speed.choose( state.m_escape.getNearestNextDistance() );
+    }
+
+    /**
+     * Update movements towards the target and away from the zombies.
+     * @see chooseTarget()
+     * @see createEscapeVector()
+     */
+    void calculateMovements( WorldSnapshot world, BotState state )
+    {
+        chooseTarget( world, state );
+
+        // Walk around hordes instead of straight to the flag if possible
+        if( state.m_targetFlag >= 0 && state.m_planner != null &&
+                state.m_planner.plan( state.m_x, state.m_y,
+                                      world.getFlagX()[ state.m_targetFlag ],
+                                      world.getFlagY()[ state.m_targetFlag ],
+                                      state.m_waypoint ) )
+        {
+            setTarget( state, state.m_waypoint[ 0 ], state.m_waypoint[ 1 ] );
+        }
+
+        createEscapeVector( world, state );
+    }
+
+    /**
+     * Choose a flag where not so many zombies are, but which
+     * is also near us. The next flag of the route is preferred while
+     * it is safe; if it cannot be used for ROUTE_SKIP_TICKS ticks, the
+     * route moves on to the following flag. The normalized direction is
+     * stored as target.
+     * @see RoutePlanner
+     */
+    void chooseTarget( WorldSnapshot world, BotState state )
+    {
+        int numCandidates = state.m_numFlagQueries;
+        state.m_targetFlag = -1;
+
+        if( state.m_longestFlag < 0 )
+        {
+            setTarget( state, 0, 0 );
+            return;
+        }
+
+        // If no flag is safe, the longest flag vector is used (as before)
+        float kx = world.getFlagX()[ state.m_longestFlag ] - state.m_x;
+        float ky = world.getFlagY()[ state.m_longestFlag ] - state.m_y;
+
+        // Count zombies around all candidates (or take the counts of a
+        // speculation that turned out to be right)
+        if( world.hasFlagZombieCounts( FLAG_SAFETY_RANGE ) )
+        {
+            for( int c = 0; c < numCandidates; ++c )
+                state.m_flagQueryCounts[ c ] = world.getFlagZombieCount( state.m_flagQueryIndex[ c ] );
+        }
+        else
+            state.m_cache.countZombiesInRanges( state.m_flagQueryX, state.m_flagQueryY, numCandidates,
+                                                FLAG_SAFETY_RANGE, state.m_flagQueryCounts );
+
+        // Next flag on our route (if there is one)
+        int routeFlag = -1;
+        if( state.m_route != null )
+        {
+            state.m_route.start( world.getFlagX(), world.getFlagY(), state.m_x, state.m_y );
+            routeFlag = state.m_route.getTarget();
+        }
+
+        float min = Float.MAX_VALUE;
+        for( int c = 0; c < numCandidates; ++c )
+        {
+            if( state.m_flagQueryCounts[ c ] >= 2 )
+                continue;
+
+            // Safe flag on the route? Follow the route
+            if( state.m_flagQueryIndex[ c ] == routeFlag )
+            {
+                kx = state.m_flagQueryX[ c ];
+                ky = state.m_flagQueryY[ c ];
+                state.m_targetFlag = routeFlag;
+                break;
+            }
+
+            // Flag is safe? Epic -> use it (because it is [currently] the nearest one)
+            if( state.m_flagQueryDistSq[ c ] < min )
+            {
+                kx  = state.m_flagQueryX[ c ];
+                ky  = state.m_flagQueryY[ c ];
+                min = state.m_flagQueryDistSq[ c ];
+                state.m_targetFlag = state.m_flagQueryIndex[ c ];
+            }
+        }
+
+        setTarget( state, kx - state.m_x, ky - state.m_y );
+
+        // Do not wait for the route flag forever
+        if( routeFlag < 0 || state.m_targetFlag == routeFlag )
+            state.m_routeBlockedTicks = 0;
+        else if( ++state.m_routeBlockedTicks > ROUTE_SKIP_TICKS )
+        {
+            state.m_route.advance();
+            state.m_routeBlockedTicks = 0;
+        }
+    }
+
+    /**
+     * Get a vector which describes the escape direction from
+     * the zombies (stored normalized in the state).
+     *
+     * @note The vector is pointing towards the
+     *       zombies ( -> don't forget *(-1) )
+     */
+    void createEscapeVector( WorldSnapshot world, BotState state )
+    {
+        int numZombies = state.m_escape.getNextCount();
+
+        // Update escape relevance
+        if( world.getNumFlags() > 0 )
+            state.m_escapeFactor = ( world.getOwnerCount( state.m_playerIndex ) * Math.max( 1, numZombies ) )
+                    / world.getNumFlags();
+
+        state.m_escapeX = 0;
+        state.m_escapeY = 0;
+
+        // The sum over the zombies in range always pointed to the nearest
+        // zombie, so only its direction is needed
+        int nearest = numZombies > 0 ? state.m_escape.getNearest() : -1;
+        if( nearest < 0 )
+            return;
+
+        float dx = world.getZombieX()[ nearest ] - state.m_x;
+        float dy = world.getZombieY()[ nearest ] - state.m_y;
+        float length = (float)Math.sqrt( dx * dx + dy * dy );
+
+        // ...because of null-vector-normalization-problem...
+        if( length > 0 )
+        {
+            state.m_escapeX = dx / length;
+            state.m_escapeY = dy / length;
+        }
+    }
+
+    /**
+     * This method might later be used to create a vector to force escape
+     * from the zombies.
+     *
+     * @note The vector returned is pointing towards the
+     *       zombies ( -> don't forget *(-1) )
+     *
+     * @param out Receives the escape vector (x, y)
+     */
+    void emergencyEscape( WorldSnapshot world, BotState state, float[] out )
+    {
+        out[ 0 ] = 0;
+        out[ 1 ] = 0;
+
+        // Escape from zombies in critical range
+        float range = (int)Math.max( ZombieConstants.MAX_PLAYER_VOLUME_RADIUS / 4.0f,
+                                     state.m_noiseRadius * 2.0f );
+        float[] x = world.getZombieX(), y = world.getZombieY();
+        float[] nextX = world.getZombieNextX(), nextY = world.getZombieNextY();
+
+        for( int i = 0; i < world.getNumZombies(); ++i )
+        {
+            float dx = nextX[ i ] - state.m_x, dy = nextY[ i ] - state.m_y;
+            if( dx * dx + dy * dy <= range * range )
+            {
+                out[ 0 ] += x[ i ] - state.m_x;
+                out[ 1 ] += y[ i ] - state.m_y;
+            }
+        }
+    }
+
+    /**
+     * Get sum of target and escape movement at calculated speed
+     * @see calculateMovementSpeed
+     * @see calculateMovements
+     */
+    void createMovement( BotState state )
+    {
+        float x = state.m_targetX - state.m_escapeX;
+        float y = state.m_targetY - state.m_escapeY;
+        float length = (float)Math.sqrt( x * x + y * y );
+
+        // Avoid normalization-of-null-vector-problem
+        if( !( length > 0 ) )
+        {
+            state.m_lastSpeed = 0;
+            return;
+        }
+
+        // Set length of vector to desired speed
+        state.m_movement.set( x / length * state.m_currentSpeed,
+                              y / length * state.m_currentSpeed );
+        state.m_lastSpeed = state.m_currentSpeed;
+    }
+
+    /**
+     * DummyFlagLock strategy: walk to the nearest unlocked flag and away
+     * from the zombies that can hear us, weighted by their distance.
+     */
+    private void decideDummy( WorldSnapshot world, BotState state )
+    {
+        float px = state.m_x, py = state.m_y;
+
+        // Nearest flag information
+        float[] flagX = world.getFlagX(), flagY = world.getFlagY();
+        float flagMoveX = Float.MAX_VALUE, flagMoveY = Float.MAX_VALUE;
+        float flagLength = length( flagMoveX, flagMoveY );
+
+        for( int i = 0; i < world.getNumFlags(); ++i )
+        {
+            // Decrease lock state counters for flags (to avoid two bots "fighting" for same flag)
+            --state.m_lockedFlags[ i ];
+
+            if( world.getFlagOwner( i ) == state.m_playerIndex )
+            {
+                if( !state.m_lastOwnFlags[ i ] )
+                    // Lock flag for 20 steps
+                    state.m_lockedFlags[ i ] = DUMMY_FLAG_LOCK_TICKS;
+                continue;
+            }
+
+            // Save if it is our flag this turn
+            state.m_lastOwnFlags[ i ] = false;
+
+            float mx = flagX[ i ] - px, my = flagY[ i ] - py;
+            float m = length( mx, my );
+            if( state.m_lockedFlags[ i ] <= 0 && m < flagLength )
+            {
+                flagMoveX  = mx;
+                flagMoveY  = my;
+                flagLength = m;
+            }
+        }
+
+        // This will be a null vector if we own all flags
+        flagMoveX /= flagLength;
+        flagMoveY /= flagLength;
+
+        // Escape movement
+        state.m_escape.evaluate( world.getZombieX(), world.getZombieY(),
+                                 world.getZombieNextX(), world.getZombieNextY(),
+                                 world.getNumZombies(), px, py,
+                                 state.m_noiseRadius * DUMMY_NOISE_SCALE, DUMMY_ESCAPE_POWER, 0 );
+        float escapeX = state.m_escape.getSumX();
+        float escapeY = state.m_escape.getSumY();
+
+        float escapeLength = length( escapeX, escapeY );
+        if( escapeLength != 0 )
+        {
+            escapeX /= escapeLength;
+            escapeY /= escapeLength;
+        }
+
+        float moveX = escapeX * DUMMY_ESCAPE_PRIOR + flagMoveX * DUMMY_FLAG_PRIOR;
+        float moveY = escapeY * DUMMY_ESCAPE_PRIOR + flagMoveY * DUMMY_FLAG_PRIOR;
+        float moveLength = length( moveX, moveY );
+        if( moveLength == 0 )
+            return;
+        moveX /= moveLength;
+        moveY /= moveLength;
+
+        // Don't fall out of the world
+        while( length( px + moveX, py + moveY ) > ZombieConstants.MAP_RADIUS )
+        {
+            moveX -= px;
+            moveY -= py;
+        }
+
+        moveLength = length( moveX, moveY );
+        state.m_movement.set( moveX / moveLength, moveY / moveLength );
+    }
+
+    /**
+     * This handler is called whenever a flag loses its "owned" state
+     *
+     * @param world Current world
+     * @param state State of the bot
+     * @param flagIndex Index of the flag which was freed
+     */
+    public void onFlagFreed( WorldSnapshot world, BotState state, int flagIndex )
+    {
+        // Flag can be captured again
+        if( state.m_route != null )
+            state.m_route.insert( flagIndex );
+
+        // Avoid fighting for flags
+        if( !state.m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + flagIndex ) )
+            state.m_locker.lock( ActionLocker.ACTION_OWNED_FLAGS + flagIndex, 5 );
+    }
+
+    /**
+     * This handler is called whenever an other bot captures a flag
+     *
+     * @param world Current world
+     * @param state State of the bot
+     * @param flagIndex Index of the flag which was captured
+     */
+    public void onOtherCapturedFlag( WorldSnapshot world, BotState state, int flagIndex )
+    {
+        // Might have been ours before -> capturable again
+        if( state.m_route != null )
+            state.m_route.insert( flagIndex );
+
+        // The bottle is handled with the events (see handleEvents())
+    }
+
+    /**
+     * Consume the pending flag events of a bot and react to them on the
+     * calling thread: throw a bottle at the next flag of a dangerous
+     * player that captured a flag.
+     *
+     * @param world Current world
+     * @param state State of the bot
+     */
+    void handleEvents( WorldSnapshot world, BotState state )
+    {
+        FlagObserver observer = state.m_observer;
+
+        while( observer.hasEvent() )
+        {
+            int type = observer.peekType();
+            int flag = observer.peekFlag();
+            int owner = observer.peekOwner();
+            recordCapture( observer, state.m_opponents );
+            observer.pop();
+
+            // We cannot throw a bottle - so rest is not needed
+            if( type != FlagObserver.EVENT_OTHER_CAPTURED ||
+                    state.m_locker.isLocked( ActionLocker.ACTION_THROW_BOTTLE ) )
+                continue;
+
+            throwBottle( world, state, findBottleTarget( world, state.m_playerIndex, state.m_x, state.m_y,
+                                                         flag, owner, state.m_opponents ) );
+        }
+    }
+
+    /**
+     * Pick up the bottle target the event worker found since the last tick
+     * and hand it the events of this tick.
+     *
+     * @param world Current world
+     * @param state State of the bot (has an event worker)
+     */
+    void dispatchEvents( WorldSnapshot world, BotState state )
+    {
+        FlagEventWorker worker = state.m_eventWorker;
+
+        // Still busy -> the events stay in the ring until the next tick
+        if( !worker.isIdle() )
+            return;
+
+        int target = worker.takeTarget();
+        if( target >= 0 && !state.m_locker.isLocked( ActionLocker.ACTION_THROW_BOTTLE ) )
+            throwBottle( world, state, target );
+
+        if( state.m_observer.hasEvent() )
+            worker.request( world, state.m_x, state.m_y,
+                            state.m_locker.isLocked( ActionLocker.ACTION_THROW_BOTTLE ) );
+    }
+
+    /**
+     * Start a background thread which does the costly reactions to flag
+     * events between two ticks. Without it, the events are handled within
+     * the tick. The results are picked up by the next decision.
+     *
+     * @param state State of the bot
+     */
+    public void startEventWorker( BotState state )
+    {
+        stopEventWorker( state );
+
+        state.m_eventWorker = new FlagEventWorker( this, state );
+        state.m_eventWorker.start();
+    }
+
+    /**
+     * Stop the event worker of a bot (if it has one)
+     *
+     * @param state State of the bot
+     */
+    public void stopEventWorker( BotState state )
+    {
+        if( state.m_eventWorker == null )
+            return;
+
+        state.m_eventWorker.interrupt();
+        state.m_eventWorker = null;
+    }
+
+    /**
+     * Feed the oldest pending event into the opponent model (if it is a
+     * capture of another player - our own captures are never predicted)
+     *
+     * @param observer Observer with a pending event
+     * @param model Model of the bot
+     */
+    void recordCapture( FlagObserver observer, OpponentModel model )
+    {
+        if( observer.peekType() == FlagObserver.EVENT_OTHER_CAPTURED )
+            model.onCapture( observer.peekOwner(), observer.peekFlag(), observer.peekTick() );
+    }
+
+    /**
+     * Guess the next flag of the player who just captured a flag, if we are
+     * not the leading player: the flag the opponent model predicts, if
+     * the bottle gets there before him, otherwise the nearest flag he does
+     * not own yet. Only reads the world and the model, so it can be called
+     * from the thread consuming the events.
+     *
+     * @param world World the flag was captured in
+     * @param playerIndex Index of our player
+     * @param x x coordinate of our player
+     * @param y y coordinate of our player
+     * @param flagIndex Index of the flag which was captured
+     * @param owner Player who captured the flag (taken from the event, the
+     *              world may already be older or newer)
+     * @param model Capture statistics (already contain this capture) or null
+     *
+     * @return Index of the flag to throw the bottle at or -1 to keep it
+     */
+    int findBottleTarget( WorldSnapshot world, int playerIndex, float x, float y, int flagIndex,
+                          int owner, OpponentModel model )
+    {
+        // Only captures of other players are handled
+        if( owner < 0 || owner == playerIndex )
+            return -1;
+
+        int numFlags = world.getNumFlags();
+
+        // Find out player if is dangerous == max flags
+        int bestPlayerIdx   = -1;
+        int bestPlayerFlags = 0;
+        for( int i = 0; i < ZombieConstants.MAX_NUM_PLAYERS; ++i )
+        {
+            int playerFlags = world.getOwnerCount( i );
+
+            // Player has more than 17% of flags and most flags over all?
+            if( playerFlags > bestPlayerFlags && playerFlags > numFlags / 4 )
+            {
+                bestPlayerIdx = i;
+                bestPlayerFlags = playerFlags;
+            }
+        }
+
+        // We are the best? Ignore the event
+        if( bestPlayerIdx == playerIndex )
+            return -1;
+
+        float[] flagX = world.getFlagX(), flagY = world.getFlagY();
+
+        // Where did this player go after this flag before?
+        int predicted = model == null || model.getLastFlag( owner ) != flagIndex ? -1 : model.predictNext( owner );
+        if( predicted >= 0 && world.getFlagOwner( predicted ) != owner )
+        {
+            // Expected arrival: his usual time between captures, but not
+            // earlier than he can walk there
+            float walk = length( flagX[ predicted ] - flagX[ flagIndex ], flagY[ predicted ] - flagY[ flagIndex ] )
+                    / ZombieConstants.MAX_PLAYER_SPEED;
+            float arrival = Math.max( walk, model.getCaptureInterval( owner ) );
+
+            if( length( x - flagX[ predicted ], y - flagY[ predicted ] ) / ZombieConstants.BOTTLE_SPEED < arrival )
+                return predicted;
+        }
+        int nearestFlag = 0;
+        float minDist   = Float.MAX_VALUE;
+
+        for( int i = 0; i < numFlags; ++i )
+        {
+            // Avoid comparison to captured flag ( distance == 0 )
+            if( i == flagIndex )
+                continue;
+
+            float distance = length( flagX[ i ] - flagX[ flagIndex ], flagY[ i ] - flagY[ flagIndex ] );
+            if( distance < minDist && world.getFlagOwner( i ) != owner )
+            {
+                // Can the bottle reach the flag in time?
+                if( length( x - flagX[ nearestFlag ], y - flagY[ nearestFlag ] )
+                        / ZombieConstants.BOTTLE_SPEED
+                        < minDist / ZombieConstants.MAX_PLAYER_SPEED + 10 )
+                {
+                    minDist = distance;
+                    nearestFlag = i;
+                }
+            }
+        }
+
+        return minDist < Float.MAX_VALUE ? nearestFlag : -1;
+    }
+
+    /**
+     * Throw the bottle at a flag (if there is one)
+     */
+    private void throwBottle( WorldSnapshot world, BotState state, int flag )
+    {
+        if( flag < 0 )
+            return;
+
+        // Bottle to player's "next flag"
+        state.m_movement.throwBottle( world.getFlagX()[ flag ], world.getFlagY()[ flag ] );
+        // Avoid throwing a bottle in next 50 steps
+        state.m_locker.lock( ActionLocker.ACTION_THROW_BOTTLE, 50 );
+    }
+
+    /**
+     * This handler is called when our bot captured a flag
+     *
+     * @param world Current world
+     * @param state State of the bot
+     * @param flagIndex Index of the flag that was captured
+     */
+    public void onSelfCapturedFlag( WorldSnapshot world, BotState state, int flagIndex )
+    {
+        // The route continues with the next flag
+        if( state.m_route != null )
+            state.m_route.remove( flagIndex );
+
+        // Lock every captured flag for 25 turns to avoid conflicts with other zombies
+        if( !state.m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + flagIndex ) )
+            state.m_locker.lock( ActionLocker.ACTION_OWNED_FLAGS + flagIndex, 25 );
+    }
+
+    /**
+     * Store the normalized direction to the target (or a null vector).
+     */
+    private static void setTarget( BotState state, float x, float y )
+    {
+        float l = length( x, y );
+
+        // ...because of null-vector-flag-normalization-problem...
+        if( !( l > 0 ) )
+        {
+            state.m_targetX = 0;
+            state.m_targetY = 0;
+            return;
+        }
+
+        state.m_targetX = x / l;
+        state.m_targetY = y / l;
+    }
+
+    /**
+     * Length of a vector
+     */
+    private static float length( float x, float y )
+    {
+        return (float)Math.sqrt( x * x + y * y );
+    }
+}
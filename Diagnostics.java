@@ -0,0 +1,291 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in memory and GC report of a bot
+ *
+ * Measures for every think() call:
+ *    - the bytes allocated by the calling thread
+ *      (com.sun.management.ThreadMXBean.getThreadAllocatedBytes())
+ *    - the duration
+ *    - the number of entries and the bytes held by the zombie cache
+ *    - garbage collections that happened while the bot was thinking
+ *    - flag events lost because their consumer was too slow
+ *
+ * A summary is printed when the next match starts and when the JVM exits
+ * (a single shutdown hook reports all matches still running). The game
+ * does not tell us when a match ended, so a match without a tick for
+ * MATCH_END_NANOS is reported and dropped when another match starts.
+ * Enable it by starting the JVM with -Dbot.diagnostics=true, otherwise
+ * all methods return immediately.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class Diagnostics implements Runnable
+{
+    //! Is the diagnostics mode enabled?
+    public static final boolean ENABLED = Boolean.getBoolean( "bot.diagnostics" );
+
+    //! A match without a tick for this long is over
+    static final long MATCH_END_NANOS = 10L * 1000 * 1000 * 1000;
+
+    //! Diagnostics with a running match (reported when the JVM exits)
+    private static final ArrayList<Diagnostics> s_registry = new ArrayList<Diagnostics>();
+    //! Shutdown hook reporting the registry (null until the first registration)
+    private static Thread s_hook = null;
+
+    //! Name of the bot used in the report
+    private final String m_name;
+    //! Thread bean with allocation counters (null if not supported)
+    private com.sun.management.ThreadMXBean m_threads = null;
+    //! Garbage collectors of the JVM
+    private List<GarbageCollectorMXBean> m_collectors = null;
+
+    //! State at the start of the current tick
+    private long m_startAllocated = 0;
+    private long m_startNanos = 0;
+    private long m_startGcCount = 0;
+    private long m_startGcMillis = 0;
+
+    //! Statistics of the current match
+    private int  m_ticks = 0;
+    private long m_totalAllocated = 0;
+    private long m_maxAllocated = 0;
+    private long m_totalNanos = 0;
+    private long m_maxNanos = 0;
+    private int  m_peakEntries = 0;
+    private long m_peakBytes = 0;
+    private int  m_gcTicks = 0;
+    private long m_gcCount = 0;
+    private long m_gcMillis = 0;
+    private int  m_droppedEvents = 0;
+    //! Time of the last tick or of the match start (System.nanoTime())
+    private volatile long m_lastTickNanos = 0;
+
+    /**
+     * Create the diagnostics of a bot
+     *
+     * @param name Name of the bot used in the report
+     */
+    public Diagnostics( String name )
+    {
+        m_name = name;
+
+        if( !ENABLED )
+            return;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if( threads instanceof com.sun.management.ThreadMXBean )
+        {
+            m_threads = (com.sun.management.ThreadMXBean)threads;
+            if( m_threads.isThreadAllocatedMemorySupported() && !m_threads.isThreadAllocatedMemoryEnabled() )
+                m_threads.setThreadAllocatedMemoryEnabled( true );
+            if( !m_threads.isThreadAllocatedMemorySupported() )
+                m_threads = null;
+        }
+        m_collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    }
+
+    /**
+     * Shutdown hook: report the running matches of all registered diagnostics
+     */
+    @Override
+    public void run()
+    {
+        Diagnostics[] registered;
+        synchronized( Diagnostics.class )
+        {
+            registered = s_registry.toArray( new Diagnostics[ s_registry.size() ] );
+        }
+
+        for( int i = 0; i < registered.length; ++i )
+            registered[ i ].report();
+    }
+
+    /**
+     * Add diagnostics to the registry, install the shutdown hook on the
+     * first call
+     *
+     * @return Other diagnostics whose match is over (still registered,
+     *         they are dropped when they are reported)
+     */
+    private static synchronized Diagnostics[] register( Diagnostics diagnostics )
+    {
+        if( !s_registry.contains( diagnostics ) )
+            s_registry.add( diagnostics );
+
+        if( s_hook == null )
+        {
+            s_hook = new Thread( diagnostics, "Diagnostics" );
+            Runtime.getRuntime().addShutdownHook( s_hook );
+        }
+
+        long now = System.nanoTime();
+        ArrayList<Diagnostics> ended = new ArrayList<Diagnostics>();
+        for( Diagnostics other : s_registry )
+        {
+            if( other != diagnostics && now - other.m_lastTickNanos > MATCH_END_NANOS )
+                ended.add( other );
+        }
+
+        return ended.toArray( new Diagnostics[ ended.size() ] );
+    }
+
+    /**
+     * Remove diagnostics from the registry
+     */
+    private static synchronized void unregister( Diagnostics diagnostics )
+    {
+        s_registry.remove( diagnostics );
+    }
+
+    /**
+     * A new match starts: report the last one and start over. Matches of
+     * other bots which are over are reported, too.
+     */
+    public void startMatch()
+    {
+        if( !ENABLED )
+            return;
+
+        report();
+        reset();
+
+        // Reported outside of our lock, report() locks the other diagnostics
+        Diagnostics[] ended = register( this );
+        for( int i = 0; i < ended.length; ++i )
+            ended[ i ].report();
+    }
+
+    /**
+     * Clear the statistics for a new match
+     */
+    private synchronized void reset()
+    {
+        m_lastTickNanos = System.nanoTime();
+        m_ticks = 0;
+        m_totalAllocated = 0;
+        m_maxAllocated = 0;
+        m_totalNanos = 0;
+        m_maxNanos = 0;
+        m_peakEntries = 0;
+        m_peakBytes = 0;
+        m_gcTicks = 0;
+        m_gcCount = 0;
+        m_gcMillis = 0;
+        m_droppedEvents = 0;
+    }
+
+    /**
+     * Called at the start of think()
+     */
+    public void beginTick()
+    {
+        if( !ENABLED )
+            return;
+
+        m_startGcCount  = gcCount();
+        m_startGcMillis = gcMillis();
+        m_startAllocated = allocated();
+        m_startNanos = System.nanoTime();
+    }
+
+    /**
+     * Called at the end of think()
+     *
+     * @param cache Zombie cache of the bot (null if there is none)
+     * @param droppedEvents Number of flag events dropped in this match so far
+     * @see FlagObserver.getDroppedEvents()
+     */
+    public synchronized void endTick( ZombiesInRangeCache cache, int droppedEvents )
+    {
+        if( !ENABLED )
+            return;
+
+        m_lastTickNanos = System.nanoTime();
+        long nanos = m_lastTickNanos - m_startNanos;
+        long bytes = allocated() - m_startAllocated;
+        long gcs = gcCount() - m_startGcCount;
+
+        ++m_ticks;
+        m_totalAllocated += bytes;
+        m_maxAllocated = Math.max( m_maxAllocated, bytes );
+        m_totalNanos += nanos;
+        m_maxNanos = Math.max( m_maxNanos, nanos );
+        m_droppedEvents = droppedEvents;
+
+        // The cache grows during the tick, so its size now is the tick's peak
+        if( cache != null )
+        {
+            m_peakEntries = Math.max( m_peakEntries, cache.getNumEntries() );
+            m_peakBytes = Math.max( m_peakBytes, cache.getFootprintBytes() );
+        }
+
+        if( gcs > 0 )
+        {
+            ++m_gcTicks;
+            m_gcCount += gcs;
+            m_gcMillis += gcMillis() - m_startGcMillis;
+        }
+    }
+
+    /**
+     * Print the summary of the current match (if there were ticks) and
+     * drop the diagnostics from the registry until the next match starts
+     */
+    public synchronized void report()
+    {
+        if( !ENABLED )
+            return;
+
+        unregister( this );
+        if( m_ticks == 0 )
+            return;
+
+        System.out.println( "[" + m_name + "] match summary: "
+                + m_ticks + " ticks, "
+                + "think avg " + m_totalNanos / m_ticks / 1000 + " us / max " + m_maxNanos / 1000 + " us, "
+                + ( m_threads == null ? "allocation n/a, "
+                        : "allocated avg " + m_totalAllocated / m_ticks + " B / max " + m_maxAllocated
+                          + " B per tick (" + m_totalAllocated + " B total), " )
+                + "cache peak " + m_peakEntries + " entries / " + m_peakBytes + " B, "
+                + m_gcCount + " GCs in " + m_gcTicks + " ticks (" + m_gcMillis + " ms), "
+                + m_droppedEvents + " flag events dropped" );
+
+        // Only report once
+        m_ticks = 0;
+    }
+
+    /**
+     * Bytes allocated by the current thread so far
+     */
+    private long allocated()
+    {
+        return m_threads == null ? 0 : m_threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+    }
+
+    /**
+     * Number of collections of all garbage collectors so far
+     */
+    private long gcCount()
+    {
+        long count = 0;
+        for( GarbageCollectorMXBean gc : m_collectors )
+            count += Math.max( 0, gc.getCollectionCount() );
+        return count;
+    }
+
+    /**
+     * Accumulated collection time of all garbage collectors so far
+     */
+    private long gcMillis()
+    {
+        long millis = 0;
+        for( GarbageCollectorMXBean gc : m_collectors )
+            millis += Math.max( 0, gc.getCollectionTime() );
+        return millis;
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Fused evaluation of the zombies around our player
+ *
+ * A single pass over the zombie coordinates (structure of arrays, see
+ * WorldSnapshot) computes everything the escape logic needs:
+ *    - the weighted escape sum over the zombies in range
+ *      ( -(radius / distance)^power * delta )
+ *    - the nearest zombie and its squared distance
+ *    - the number of zombies in range
+ *    - the number of zombies whose predicted position is in a second range
+ *      and the distance to the nearest predicted position
+ *
+ * The loop only works on primitive arrays and squared distances (no
+ * objects, no square roots, no Math.pow() for the default power of 2),
+ * so the JIT can keep everything in registers and unroll it.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class EscapeKernel
+{
+    //! Weighted escape sum of the last evaluation (points away from the zombies)
+    private float m_sumX = 0;
+    private float m_sumY = 0;
+    //! Number of zombies in range in the last evaluation
+    private int m_count = 0;
+    //! Number of zombies with a predicted position in the second range
+    private int m_nextCount = 0;
+    //! Index of the nearest zombie (-1 if there are no zombies)
+    private int m_nearest = -1;
+    //! Squared distance to the nearest zombie
+    private float m_nearestDistSq = Float.MAX_VALUE;
+    //! Squared distance to the nearest predicted zombie position
+    private float m_nearestNextDistSq = Float.MAX_VALUE;
+
+    /**
+     * Evaluate the zombies around a position
+     *
+     * @param zx x coordinates of the zombies
+     * @param zy y coordinates of the zombies
+     * @param nx Predicted x coordinates of the zombies
+     * @param ny Predicted y coordinates of the zombies
+     * @param n Number of zombies
+     * @param px x coordinate of the position
+     * @param py y coordinate of the position
+     * @param radius Range in which zombies are counted and escaped from
+     * @param power Exponent of the distance weighting
+     * @param nextRadius Range in which predicted zombie positions are counted
+     */
+    public void evaluate( float[] zx, float[] zy, float[] nx, float[] ny, int n,
+                          float px, float py, float radius, float power, float nextRadius )
+    {
+        assert zx.length >= n && zy.length >= n : "Too few zombie coordinates";
+        assert nx.length >= n && ny.length >= n : "Too few predicted zombie coordinates";
+
+        float r2 = radius * radius;
+        float nr2 = nextRadius * nextRadius;
+        float halfPower = power * 0.5f;
+        boolean square = power == 2.0f;
+
+        float sumX = 0, sumY = 0;
+        int count = 0, nextCount = 0;
+        int nearest = -1;
+        float nearestDistSq = Float.MAX_VALUE;
+        float nearestNextDistSq = Float.MAX_VALUE;
+
+        for( int i = 0; i < n; ++i )
+        {
+            float dx = zx[ i ] - px;
+            float dy = zy[ i ] - py;
+            float d2 = dx * dx + dy * dy;
+
+            if( d2 < nearestDistSq )
+            {
+                nearestDistSq = d2;
+                nearest = i;
+            }
+
+            if( d2 <= r2 )
+            {
+                // (radius / distance)^power == (radius^2 / distance^2)^(power / 2)
+                float w = square ? r2 / d2 : (float)Math.pow( r2 / d2, halfPower );
+                sumX -= dx * w;
+                sumY -= dy * w;
+                ++count;
+            }
+
+            float ndx = nx[ i ] - px;
+            float ndy = ny[ i ] - py;
+            float nd2 = ndx * ndx + ndy * ndy;
+            if( nd2 <= nr2 )
+                ++nextCount;
+            if( nd2 < nearestNextDistSq )
+                nearestNextDistSq = nd2;
+        }
+
+        m_sumX = sumX;
+        m_sumY = sumY;
+        m_count = count;
+        m_nextCount = nextCount;
+        m_nearest = nearest;
+        m_nearestDistSq = nearestDistSq;
+        m_nearestNextDistSq = nearestNextDistSq;
+    }
+
+    /**
+     * Get the x component of the weighted escape sum
+     * @return x component (not normalized)
+     */
+    public float getSumX()
+    {
+        return m_sumX;
+    }
+
+    /**
+     * Get the y component of the weighted escape sum
+     * @return y component (not normalized)
+     */
+    public float getSumY()
+    {
+        return m_sumY;
+    }
+
+    /**
+     * Get the number of zombies in range
+     * @return Number of zombies within the radius
+     */
+    public int getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * Get the number of zombies whose predicted position is in the second range
+     * @return Number of predicted zombie positions within nextRadius
+     */
+    public int getNextCount()
+    {
+        return m_nextCount;
+    }
+
+    /**
+     * Get the nearest zombie
+     * @return Index of the nearest zombie or -1 if there are no zombies
+     */
+    public int getNearest()
+    {
+        return m_nearest;
+    }
+
+    /**
+     * Get the distance to the nearest zombie
+     * @return Distance to the nearest zombie (Float.MAX_VALUE if there are no zombies)
+     */
+    public float getNearestDistance()
+    {
+        return m_nearest < 0 ? Float.MAX_VALUE : (float)Math.sqrt( m_nearestDistSq );
+    }
+
+    /**
+     * Get the distance to the nearest predicted zombie position
+     * @return Distance to the nearest predicted position (Float.MAX_VALUE if there are no zombies)
+     */
+    public float getNearestNextDistance()
+    {
+        return m_nearest < 0 ? Float.MAX_VALUE : (float)Math.sqrt( m_nearestNextDistSq );
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread handling the flag events of a bot between two ticks
+ *
+ * The engine hands the worker the events of a tick after the movement has
+ * been decided. While the game runs the other bots, the worker consumes
+ * the events from the observer's ring and does the costly part of the
+ * reactions (opponent statistics, searching the flag to throw a bottle
+ * at). The next decision picks up the result; apart from the events and
+ * the opponent model the worker never touches the bot state.
+ * @see DecisionEngine.dispatchEvents()
+ * @see FlagObserver
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class FlagEventWorker extends Thread
+{
+    //! Engine doing the actual work
+    private final DecisionEngine m_engine;
+    //! Bot the events belong to
+    private final BotState m_state;
+
+    //! Input of the current request (written before m_requested)
+    private WorldSnapshot m_world = null;
+    private float m_x = 0;
+    private float m_y = 0;
+    private boolean m_bottleLocked = false;
+    //! Mark behind the last event of the request (later events belong to the next one)
+    private int m_end = 0;
+
+    //! Flag to throw a bottle at (-1 if none, written before m_finished)
+    private int m_target = -1;
+
+    //! Number of the last requested and of the last finished request
+    private volatile int m_requested = 0;
+    private volatile int m_finished = 0;
+
+    /**
+     * Create a new worker (not started yet)
+     *
+     * @param engine Engine doing the actual work
+     * @param state Bot the events belong to
+     */
+    public FlagEventWorker( DecisionEngine engine, BotState state )
+    {
+        super( "FlagEventWorker-" + state.m_playerIndex );
+        setDaemon( true );
+
+        m_engine = engine;
+        m_state  = state;
+    }
+
+    /**
+     * Thread main loop: wait for requests and handle the events.
+     */
+    @Override
+    public void run()
+    {
+        while( !isInterrupted() )
+        {
+            int requested = m_requested;
+            if( requested == m_finished )
+            {
+                LockSupport.park( this );
+                continue;
+            }
+
+            try
+            {
+                work();
+            }
+            catch( RuntimeException e )
+            {
+                // Skip the events of the failed request, keep the worker alive
+                FlagObserver observer = m_state.m_observer;
+                while( observer.hasEventBefore( m_end ) )
+                    observer.pop();
+                m_target = -1;
+                m_world = null;
+            }
+            m_finished = requested;
+        }
+    }
+
+    /**
+     * Handle the pending events of the bot (only called if the worker is
+     * idle). Events recorded after this call are left for the next request,
+     * they may not match the given world.
+     *
+     * @param world World of the tick the events were detected in
+     * @param x x coordinate of our player
+     * @param y y coordinate of our player
+     * @param bottleLocked Is throwing a bottle locked?
+     */
+    void request( WorldSnapshot world, float x, float y, boolean bottleLocked )
+    {
+        assert isIdle() : "Event worker is still busy";
+
+        m_world = world;
+        m_x = x;
+        m_y = y;
+        m_bottleLocked = bottleLocked;
+        m_end = m_state.m_observer.markEvents();
+
+        m_requested = m_requested + 1;
+        LockSupport.unpark( this );
+    }
+
+    /**
+     * Check if the worker finished the last request
+     * @return true, if the worker is not working
+     */
+    boolean isIdle()
+    {
+        return m_requested == m_finished;
+    }
+
+    /**
+     * Get the bottle target of the last request and forget it (only called
+     * if the worker is idle)
+     *
+     * @return Index of the flag or -1 if no bottle should be thrown
+     */
+    int takeTarget()
+    {
+        int target = m_target;
+        m_target = -1;
+        return target;
+    }
+
+    /**
+     * Consume the events. Like in DecisionEngine.handleEvents() only the
+     * first capture that leads to a target counts, afterwards the bottle
+     * would be locked.
+     */
+    void work()
+    {
+        FlagObserver observer = m_state.m_observer;
+
+        while( observer.hasEventBefore( m_end ) )
+        {
+            int type = observer.peekType();
+            int flag = observer.peekFlag();
+            int owner = observer.peekOwner();
+            m_engine.recordCapture( observer, m_state.m_opponents );
+            observer.pop();
+
+            if( type != FlagObserver.EVENT_OTHER_CAPTURED || m_bottleLocked || m_target >= 0 )
+                continue;
+
+            m_target = m_engine.findBottleTarget( m_world, m_state.m_playerIndex, m_x, m_y,
+                                                  flag, owner, m_state.m_opponents );
+        }
+
+        // Do not keep the world alive longer than needed
+        m_world = null;
+    }
+}
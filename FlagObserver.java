@@ -1,92 +1,271 @@
-import core.ai.AiFlagInfo;
-import core.ai.AiPlayerInfo;
-
 /**
  * This class watches flags for changes and calles
- * handlers of the bot.
- * 
+ * handlers of the decision engine.
+ *
  * The class reacts to the following events:
  *    - a flag was freed
  *    - a flag was captured by an other bot
  *    - out bot captured a flag
- * 
+ *
+ * The handlers of the engine only do the cheap bookkeeping which the
+ * current tick depends on (route, flag locks). Every transition is also
+ * recorded in a ring buffer of typed event records (parallel primitive
+ * arrays, so recording does not allocate). Costly reactions are done by
+ * whoever consumes the events - within the tick or on a background thread
+ * between two ticks.
+ * @see DecisionEngine.handleEvents()
+ * @see FlagEventWorker
+ *
+ * @note The ring has exactly one producer (update()/check()) and one
+ *       consumer (peek/pop methods), which may run on different threads.
+ *
  * @author Oskar Kirmis <kirmis@st.ovgu.de>
  */
 final public class FlagObserver
 {
-    //! State of the flags last turn; needed to detected changes
-    Integer[] m_previousFlagStates = null;
+    //! Event types
+    public static final int EVENT_FREED = 0;
+    public static final int EVENT_SELF_CAPTURED = 1;
+    public static final int EVENT_OTHER_CAPTURED = 2;
+
+    //! Owner of the flags last turn (WorldSnapshot.NO_OWNER if free); needed to detected changes
+    int[] m_previousFlagStates = null;
     //! ActionLocker which locks actions when we captured a flag
     ActionLocker m_locker = null;
-    //! Own player information
-    AiPlayerInfo m_ownPlayer = null;
-    // Own bot instance
-    GeneralPurpose m_controller;
-    
+    //! Engine whose handlers are called
+    DecisionEngine m_engine;
+
+    //! Event records (ring buffer, capacity is a power of two)
+    private final int[] m_eventType;
+    private final int[] m_eventFlag;
+    private final int[] m_eventPrevious;
+    private final int[] m_eventOwner;
+    private final int[] m_eventTick;
+    private final int m_eventMask;
+    //! Number of recorded and of consumed events (written by one thread each)
+    private volatile int m_eventHead = 0;
+    private volatile int m_eventTail = 0;
+    //! Number of events which did not fit into the ring
+    private int m_droppedEvents = 0;
+
     /**
      * Creates a new empty flag observer for a given number of flags
-     * 
+     *
      * @param numFlags Number of flags to observe
+     * @param engine Decision engine of the bot
      * @param locker   An instance of action locker which is used to handle flag events
-     * @param ownPlayer Instance of player information
-     * @param bot Instance of our bot
      */
-    public FlagObserver( int numFlags, AiPlayerInfo ownPlayer, GeneralPurpose bot, ActionLocker locker )
+    public FlagObserver( int numFlags, DecisionEngine engine, ActionLocker locker )
     {
         assert numFlags >= 0 : "Number of flags cannot be negative";
         assert locker != null : "ActionLocker reference should not be null";
-        
+
         m_locker = locker;
-        m_ownPlayer = ownPlayer;
-        m_controller = bot;
-        
+        m_engine = engine;
+
         // Create array and initialize it
-        m_previousFlagStates = new Integer[ numFlags ];
+        m_previousFlagStates = new int[ numFlags ];
         for( int i = 0; i < numFlags; ++i )
-            m_previousFlagStates[ i ] = null;
+            m_previousFlagStates[ i ] = WorldSnapshot.NO_OWNER;
+
+        // Every flag can change once per tick, keep room for a few ticks
+        int capacity = Integer.highestOneBit( Math.max( 16, 4 * numFlags ) - 1 ) << 1;
+        m_eventType     = new int[ capacity ];
+        m_eventFlag     = new int[ capacity ];
+        m_eventPrevious = new int[ capacity ];
+        m_eventOwner    = new int[ capacity ];
+        m_eventTick     = new int[ capacity ];
+        m_eventMask     = capacity - 1;
     }
-    
+
     /**
      * Update the state of flags and handle the changes. Changes are
      * detected by comparing the previous ownership index to the current one.
-     * 
-     * By calling this method, the handlers of the bot instance are called
+     *
+     * By calling this method, the handlers of the engine are called
      * if something changed.
+     *
+     * @param world Current world
+     * @param state State of the bot the observer belongs to
+     */
+    public void update( WorldSnapshot world, BotState state )
+    {
+        assert world.getNumFlags() == m_previousFlagStates.length : "Number of flags changed during the game";
+
+        for( int i = 0; i < m_previousFlagStates.length; ++i )
+            check( world, state, i );
+    }
+
+    /**
+     * Update the state of a single flag and handle its change. This allows
+     * the engine to observe the flags within its own pass over the flags.
+     *
+     * @param world Current world
+     * @param state State of the bot the observer belongs to
+     * @param i Index of the flag
+     *
+     * @return true, if the owner of the flag changed
+     */
+    public boolean check( WorldSnapshot world, BotState state, int i )
+    {
+        int oi = world.getFlagOwner( i );
+
+        // Check for ownership changes
+        if( oi == m_previousFlagStates[ i ] )
+            return false;
+
+        // Copy state for next turn
+        int previous = m_previousFlagStates[ i ];
+        m_previousFlagStates[ i ] = oi;
+
+        // No owner but change?
+        if( oi == WorldSnapshot.NO_OWNER )
+        {
+            // -> flag was freed
+            record( EVENT_FREED, i, previous, oi, world.getTick() );
+            m_engine.onFlagFreed( world, state, i );
+        }
+        // Do we captured a flag?
+        else if( oi == state.m_playerIndex )
+        {
+            record( EVENT_SELF_CAPTURED, i, previous, oi, world.getTick() );
+            m_engine.onSelfCapturedFlag( world, state, i );
+        }
+        // An other bot captured a flag?
+        else
+        {
+            record( EVENT_OTHER_CAPTURED, i, previous, oi, world.getTick() );
+            m_engine.onOtherCapturedFlag( world, state, i );
+        }
+
+        return true;
+    }
+
+    /**
+     * Append an event record to the ring (dropped if the ring is full)
      */
-    public void update( AiFlagInfo[] flags, AiPlayerInfo ownPlayer )
+    private void record( int type, int flag, int previous, int owner, int tick )
     {
-        assert flags.length == m_previousFlagStates.length : "Number of flags changed during the game";
-        
-        for( int i = 0; i < flags.length; ++i )
+        int head = m_eventHead;
+        if( head - m_eventTail > m_eventMask )
         {
-            Integer oi = flags[ i ].getCurrentOwnerIndex();
-            
-            // Check for ownership changes
-            if( oi == m_previousFlagStates[ i ] )
-                continue;
-            
-
-            // No owner but change?
-            if( oi == null )
-            {
-                // -> flag was freed
-                m_controller.onFlagFreed( flags, i );
-                continue;
-            }
-            
-            // Do we captured a flag?
-            if( oi == ownPlayer.getPlayerIndex() )
-            {
-                m_controller.onSelfCapturedFlag( flags, i );
-                continue;
-            }
-            
-            // An other bot captured a flag?
-            m_controller.onOtherCapturedFlag( flags, i );
+            ++m_droppedEvents;
+            return;
         }
-        
-        // Copy states for next turn
-        for( int i = 0; i < flags.length; ++i )
-            m_previousFlagStates[ i ] = flags[ i ].getCurrentOwnerIndex();
+
+        int slot = head & m_eventMask;
+        m_eventType[ slot ]     = type;
+        m_eventFlag[ slot ]     = flag;
+        m_eventPrevious[ slot ] = previous;
+        m_eventOwner[ slot ]    = owner;
+        m_eventTick[ slot ]     = tick;
+
+        // Publish the record
+        m_eventHead = head + 1;
+    }
+
+    /**
+     * Check if there are events which have not been consumed yet
+     * @return true, if peekType() etc. describe an event
+     */
+    public boolean hasEvent()
+    {
+        return m_eventTail != m_eventHead;
+    }
+
+    /**
+     * Get a mark behind the newest recorded event. Events recorded later
+     * lie behind the mark.
+     * @return Mark to pass to hasEventBefore()
+     */
+    public int markEvents()
+    {
+        return m_eventHead;
+    }
+
+    /**
+     * Check if there are pending events which were recorded before a mark
+     *
+     * @param mark Result of markEvents()
+     * @return true, if peekType() etc. describe an event recorded before the mark
+     */
+    public boolean hasEventBefore( int mark )
+    {
+        return m_eventTail != mark;
+    }
+
+    /**
+     * Get the type of the oldest pending event
+     * @return EVENT_FREED, EVENT_SELF_CAPTURED or EVENT_OTHER_CAPTURED
+     */
+    public int peekType()
+    {
+        assert hasEvent() : "No pending event";
+
+        return m_eventType[ m_eventTail & m_eventMask ];
+    }
+
+    /**
+     * Get the flag of the oldest pending event
+     * @return Index of the flag
+     */
+    public int peekFlag()
+    {
+        assert hasEvent() : "No pending event";
+
+        return m_eventFlag[ m_eventTail & m_eventMask ];
+    }
+
+    /**
+     * Get the owner of the flag before the oldest pending event
+     * @return Player index or WorldSnapshot.NO_OWNER
+     */
+    public int peekPrevious()
+    {
+        assert hasEvent() : "No pending event";
+
+        return m_eventPrevious[ m_eventTail & m_eventMask ];
+    }
+
+    /**
+     * Get the owner of the flag after the oldest pending event
+     * @return Player index or WorldSnapshot.NO_OWNER
+     */
+    public int peekOwner()
+    {
+        assert hasEvent() : "No pending event";
+
+        return m_eventOwner[ m_eventTail & m_eventMask ];
+    }
+
+    /**
+     * Get the tick of the oldest pending event
+     * @return Tick of the world the change was detected in
+     */
+    public int peekTick()
+    {
+        assert hasEvent() : "No pending event";
+
+        return m_eventTick[ m_eventTail & m_eventMask ];
+    }
+
+    /**
+     * Consume the oldest pending event
+     */
+    public void pop()
+    {
+        assert hasEvent() : "No pending event";
+
+        m_eventTail = m_eventTail + 1;
+    }
+
+    /**
+     * Get the number of events which were lost because nobody consumed
+     * the ring in time
+     * @return Number of dropped events
+     */
+    public int getDroppedEvents()
+    {
+        return m_droppedEvents;
     }
-}
\ No newline at end of file
+}
@@ -1,37 +1,39 @@
-import core.ai.AiFlagInfo;
-
 /**
  * This interface should have specified the methods to
  * handle flag changes. But because of class loader restrictions,
  * the bot cannot have any interfaces :(
  * @unused
- * 
+ * @see DecisionEngine
+ *
  * @author Oskar Kirmis <kirmis@st.ovgu.de>
  */
 public interface FlagStatusHandler
 {
     /**
      * This handler is called whenever a flag loses its "owned" state
-     * 
-     * @param flagIndex Index of the flag which was captured
-     * @param flags List of current flag states
+     *
+     * @param world Current world
+     * @param state State of the bot
+     * @param flagIndex Index of the flag which was freed
      */
-    public void onFlagFreed( AiFlagInfo[] flags, int flagIndex );
+    public void onFlagFreed( WorldSnapshot world, BotState state, int flagIndex );
 
     /**
      * This handler is called whenever an other bot captures a flag
-     * 
+     *
+     * @param world Current world
+     * @param state State of the bot
      * @param flagIndex Index of the flag which was captured
-     * @param flags List of current flag states
      */
-    public void onOtherCapturedFlag( AiFlagInfo[] flags, int flagIndex );
+    public void onOtherCapturedFlag( WorldSnapshot world, BotState state, int flagIndex );
 
     /**
      * This handler is called when our bot captured a flag
-     * 
+     *
+     * @param world Current world
+     * @param state State of the bot
      * @param flagIndex Index of the flag that was captured
-     * @param flags List of current flag states
      */
-    public void onSelfCapturedFlag( AiFlagInfo[] flags, int flagIndex );
+    public void onSelfCapturedFlag( WorldSnapshot world, BotState state, int flagIndex );
 
 }
@@ -1,9 +1,6 @@
 import core.Vector;
-import core.ai.AiFlagInfo;
 import core.ai.AiMapInfo;
 import core.ai.AiPlayerInfo;
-import core.ai.AiZombieInfo;
-import core.constants.ZombieConstants;
 import core.player.PlayerController;
 
 //#comment The following comments are instructions for our
@@ -13,9 +10,25 @@ import core.player.PlayerController;
 //#include MathUtils.java
 //#include VectorUtils.java
 //#include ActionLocker.java
+//#include SpatialGrid.java
+//#include WorldSnapshot.java
+//#include WorldSpeculator.java
+//#include SharedWorld.java
+//#include PathSearch.java
+//#include PathPlanner.java
+//#include RoutePlanner.java
+//#include ZombieView.java
 //#include ZombiesInRangeCache.java
 //#include FlagStatusHandler.java
 //#include FlagObserver.java
+//#include FlagEventWorker.java
+//#include OpponentModel.java
+//#include EscapeKernel.java
+//#include SpeedController.java
+//#include Movement.java
+//#include BotState.java
+//#include DecisionEngine.java
+//#include Diagnostics.java
 
 
 /**
@@ -23,7 +36,9 @@ import core.player.PlayerController;
  * 
  * This class is the main class of the bot which represents the
  * bot itself. It uses the classes above to avoid unintended
- * behavior or speed computations up.
+ * behavior or speed computations up. The decisions themselves are
+ * made by the DecisionEngine, this class only translates between
+ * the game and the engine.
  * 
  * @author Oskar Kirmis <kirmis@st.ovgu.de>
  */
@@ -31,44 +46,20 @@ public class GeneralPurpose extends PlayerController
 // implements FlagStatusHandler cannot be used because of stupid PlayerClassLoader behaviour
 {
 
-	//! Vectors pointing from players current position to the flags
-	Vector[] m_vectorsToFlags;
+	//! Decision logic of the bot (stateless)
+	DecisionEngine m_engine = new DecisionEngine( DecisionEngine.MODE_GENERAL_PURPOSE );
 	
-	//! Vectors pointing from players current position to the zombies
-	Vector[] m_vectorsToZombies;
+	//! Everything the bot remembers between two ticks
+	BotState m_state = null;
 	
-	//! Currently selected target flag
-	Vector m_target;
+	//! Snapshot of the current tick (may be shared with other instances)
+	WorldSnapshot m_world = null;
 	
-	//! Movement to escape from current position (because of zombies)
-	Vector m_escapeMovement;
+	//! Number of ticks since the game started
+	int m_tick = 0;
 	
-	//! Factor to specify how "much" the bot tries to escpae
-	float m_escapeFactor  = 3.0f;
-	
-	//! Factor describing the bot's attraction to the current target
-	float m_greediness    = 1.8f;
-	
-	//! Speed the bot currently has (length of vector returned by think method)
-	float m_currentSpeed  = 1.0f;
-	
-	//! Number of currently captured flags
-	int   m_capturedFlags = 0;
-	
-	//! Action locker the bot uses to avoid infinitely repeating an action
-	ActionLocker        m_locker = null;
-	
-	//! Object that handles changes in flags
-	FlagObserver        m_observer = null;
-	
-	//! Instance of zombie position cache to increase the bots performance
-	ZombiesInRangeCache m_cache  = null;
-	
-	//! Own player reference
-	AiPlayerInfo m_player = null;
-	
-	//! Flag status event handler
-	FlagStatusHandler m_handler = null;
+	//! Memory/GC report (only active with -Dbot.diagnostics=true, created on game start)
+	Diagnostics m_diagnostics = null;
 
 	/**
 	 * Name of the bot
@@ -88,19 +79,6 @@ public class GeneralPurpose extends PlayerController
     {
         return "203586";
     }
-
-    
-	/**
-	 * This method was made public to allow the usage from
-	 * FlagObserver handler methods.
-	 * @see FlagObserver
-	 * @param target Target point to throw the bottle to
-	 */
-	@Override
-	public void throwBottle( Vector target )
-	{
-		super.throwBottle( target );
-	}
 	
 	
 	/**
@@ -110,16 +88,29 @@ public class GeneralPurpose extends PlayerController
 	@Override
 	public void onGameStarted( String gameTypeName, AiMapInfo map, AiPlayerInfo ownPlayer )
 	{
-		m_locker = new ActionLocker();
-		m_locker.initialize( map.getNumFlags() );
+		// Not done on construction, getName() may be overridden
+		if( m_diagnostics == null )
+			m_diagnostics = new Diagnostics( getName() );
+		m_diagnostics.startMatch();
 		
-		m_observer = new FlagObserver( map.getNumFlags(), 
-		                               ownPlayer, this, m_locker );
-		
-		m_cache = new ZombiesInRangeCache();
-		m_player = ownPlayer;
+		m_tick = 0;
+		startGame( SharedWorld.acquire( map, m_tick ), ownPlayer.getPlayerIndex() );
+	}
+	
+	/**
+	 * Create the state of a new game and start its helpers.
+	 * 
+	 * @param world Snapshot of the map at the start of the game
+	 * @param playerIndex Index of our player
+	 */
+	void startGame( WorldSnapshot world, int playerIndex )
+	{
+		if( m_state != null )
+			m_engine.stopEventWorker( m_state );
+		m_state = m_engine.createState( world, playerIndex );
 		
-		m_locker.lock( ActionLocker.ACTION_THROW_BOTTLE, 100 );
+		// Bottle targeting etc. is done between the ticks
+		m_engine.startEventWorker( m_state );
 	}
 
 	/**
@@ -134,316 +125,70 @@ public class GeneralPurpose extends PlayerController
 	@Override
 	public Vector think( AiMapInfo map, AiPlayerInfo ownPlayer )
 	{
-	    // Update internal representation of the world
-	    updateWorld( map.getZombies(), map.getFlags(),
-	                 ownPlayer, map );		
+		m_diagnostics.beginTick();
 		
-		// calculate reaction based on the environment
-		calculateMovementSpeed();
-		calculateMovements( map );
+		Movement m = decide( map, ownPlayer );
+		Vector result = new Vector( m.getX(), m.getY() );
+		finishTick( result.length() );
 		
-		return createMovement();
+		m_diagnostics.endTick( m_state.m_cache, m_state.m_observer.getDroppedEvents() );
+		return result;
 	}
 	
 
 	/**
-	 * Calculate vectors from the bot's position to the zombies and flags
-	 * and reset internal helpers (cache, locks, ...)
-	 * @param zombies Zombies to calculate the vectors for
-     * @param flags Flags to calculate the vectors for
-	 */
-	private void updateWorld( AiZombieInfo[] zombies, AiFlagInfo[] flags,
-	                          AiPlayerInfo ownPlayer, AiMapInfo map )
-	{
-	    m_player = ownPlayer;
-	    
-	    // Clean and rebuild cache
-	    m_cache.reset( map );
-	    
-	    // Decrease lock counters...
-	    m_locker.tick();
-	    
-	    // Let the observer handle the new environment
-	    m_observer.update( map.getFlags(), ownPlayer );
-	    
-        Vector ownPosition = m_player.getPosition();
-        
-        // zombie vector update
-		m_vectorsToZombies = new Vector[ zombies.length ];
-		for( int i = 0; i < zombies.length; i++ )
-			m_vectorsToZombies[ i ] = zombies[ i ].getPosition().sub( ownPosition );
-		
-		// flag vector update
-		m_vectorsToFlags = new Vector[ flags.length ];
-		for( int i = 0; i < flags.length; i++ )
-		    m_vectorsToFlags[ i ] = flags[ i ].getPosition().sub( ownPosition );
-	}
-		
-	/**
-	 * Choose a flag where not so many zombies are, but which
-	 * is also near us.
+	 * Let the engine decide on the current tick and throw a bottle
+	 * if it wants to.
 	 * 
-	 * @param map Global game situation information
-	 * @return Position of the flag ( = our target ) where to go
-	 */
-	private Vector chooseTarget( AiMapInfo map )
-	{
-		Vector ownPos = m_player.getPosition();
-		AiFlagInfo[] flags = map.getFlags();
-		
-		// Next safe flag characteristics
-		float min = Float.MAX_VALUE;
-		Vector k  = VectorUtils.getMaximum( m_vectorsToFlags );
-		
-		for( int i = 0; i < flags.length; ++i )
-		{
-			if( flags[ i ].getPosition().euclideanDistance( ownPos ) < min )
-			{
-				// Only look at flags which are currently not locked ( == visited short time ago)
-				if( !m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + i ) &&
-						!flags[ i ].isOwner( m_player ) )
-				{
-					// Flag is safe? Epic -> use it (because it is [currently] the nearest one)
-					if( m_cache.getZombiesInRange(
-							flags[ i ].getPosition(),
-							(int)( ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS / m_greediness  ) ).length < 2 )
-					{
-						k   = flags[ i ].getPosition();
-						min = k.euclideanDistance( ownPos );
-					}
-				}
-
-			}
-
-		}
-		
-		return k.sub( ownPos ).getNoramlized();
-	}
-	
-	/**
-	 * Adjust speed so that the zombie which is nearest to us can't hear us.
-	 */
-	private void calculateMovementSpeed()
-	{
-		m_currentSpeed = VectorUtils.getMinimum( m_vectorsToZombies ).length()
-				/ ( ZombieConstants.MAX_PLAYER_VOLUME_RADIUS + 1 );
-	}
-
-	/**
-	 * Update movements towards the target and away from the zombies.
-	 * @see chooseTarget()
-	 * @see createEscapeVector()
+	 * @param map Global game situation
+	 * @param ownPlayer Information on our position etc.
 	 * 
-	 * @param map Current game situation
+	 * @return Decision of the engine
 	 */
-	private void calculateMovements( AiMapInfo map )
+	Movement decide( AiMapInfo map, AiPlayerInfo ownPlayer )
 	{
-		m_target = chooseTarget( map ).getNoramlized();
-		
-		// ...because of null-vector-flag-normalization-problem...
-		if( new Float( m_target.x + m_target.y ).isNaN() )
-			m_target = Vector.ZERO();
-		
-		// importance of flag capturing...
-        m_target.mult( m_greediness );
-        
-		m_escapeMovement = createEscapeVector( map ).getNoramlized();
-
-		// ...because of null-vector-flag-normalization-problem...        
-		if( new Float( m_escapeMovement.x + m_escapeMovement.y ).isNaN() )
-		    m_escapeMovement = Vector.ZERO();
+	    // Get this tick's world, built once for all of our bots in this JVM
+	    Vector pos = ownPlayer.getPosition();
+	    Movement m = decide( SharedWorld.acquire( map, ++m_tick ),
+	                         pos.x, pos.y, ownPlayer.getCurrentNoiseRadius() );
+	    
+	    if( m.isThrowingBottle() )
+	        throwBottle( new Vector( m.getBottleX(), m.getBottleY() ) );
+	    
+	    return m;
 	}
 	
 	/**
-	 * Get a vector which describes the escape direction from
-	 * the zombies.
+	 * Let the engine decide on a snapshot (the part of think() which does
+	 * not need the game, e.g. for the benchmarks).
 	 * 
-	 * @note The vector returned is pointing towards the
-	 *       zombies ( -> don't forget *(-1) )
+	 * @param world Snapshot of the current tick
+	 * @param x x coordinate of our player
+	 * @param y y coordinate of our player
+	 * @param noiseRadius Current noise radius of our player
 	 * 
-	 * @param map Current game situation information
-	 * @return Vector for escape movement
+	 * @return Decision of the engine
 	 */
-	private Vector createEscapeVector( AiMapInfo map )
+	Movement decide( WorldSnapshot world, float x, float y, float noiseRadius )
 	{
-	    // Update escape relevance
-        m_escapeFactor = ( map.getAllOwnedFlags( m_player ).length * Math.max( 1, m_cache.getZombiesInRange( m_player.getPosition(),
-                (int)ZombieConstants.MAX_PLAYER_VOLUME_RADIUS ).length ) )
-                / map.getNumFlags();
+	    m_world = world;
+	    m_state.setPlayer( x, y, noiseRadius );
 	    
-        
-		Vector m = Vector.ZERO();
-		
-		int numZombies = m_cache.getZombiesInRange( m_player.getPosition(),
-                (int)ZombieConstants.MAX_PLAYER_VOLUME_RADIUS ).length;
-		
-		Vector[] k = new Vector[ numZombies ];
-		
-		// TODO: Still has minor bugs...!
-		for( int i = 0; i < numZombies; ++i )
-		{
-		    k[ i ] = m_vectorsToZombies[ i ];
-		    for( int j = 0; j < map.getNumZombies(); ++j )
-		        // Found zombie which is nearer?
-		        if( k[ i ].length() > m_vectorsToZombies[ j ].length() )
-		            k[ i ] = m_vectorsToZombies[ j ];
-		}
-
-
-		// Create escape vector by adding the single escape vectors
-		for( int i = 0; i < numZombies; ++i )
-		    m.addReference( k[ i ] );
-		
-		return m.getNoramlized();
+	    return m_engine.decide( m_world, m_state );
 	}
 	
 	/**
-	 * This method might later be used to create a vector to force escape
-	 * from the zombies.
+	 * Remember the speed we really move with and use the time until the
+	 * next tick to prepare it.
 	 * 
-     * @note The vector returned is pointing towards the
-     *       zombies ( -> don't forget *(-1) )
-	 * 
-	 * @return Escape vector
+	 * @param speed Length of the returned movement
 	 */
-	@SuppressWarnings("unused")
-    private Vector emergencyEscape( )
+	void finishTick( float speed )
 	{
-	    Vector m = Vector.ZERO();
-	    
-	    // Escape from zombies in critical range
-	    AiZombieInfo[] zombies = m_cache.getZombiesInRange( 
-	                                    m_player.getPosition(),
-                                        (int)Math.max( ZombieConstants.MAX_PLAYER_VOLUME_RADIUS / 4.0f,
-                                        m_player.getCurrentNoiseRadius() * 2.0f 
-                                    ) );
+	    // The speed controller has to learn from the movement we really make
+	    m_state.m_lastSpeed = speed;
 	    
-	    // Create escape vector
-	    for( int i = 0; i < zombies.length; ++i )
-	        m.addReference( zombies[ i ].getPosition().sub( m_player.getPosition() ) );
-	    
-	    return m;
-	}
-
-
-    /**
-     * Get sum of target and escape movement at calculated speed
-     * @see calculateMovementSpeed
-     * @see calculateMovements
-     * 
-     * @return The vector which will be the result of think()
-     */
-	private Vector createMovement( )
-	{
-	    Vector m = m_target.add( m_escapeMovement.mult( -1.0f ) ).getNoramlized();
-	    
-	    // Avoid normalization-of-null-vector-problem
-	    if( new Float( m.x + m.y ).isNaN() )
-			m = new Vector( 0, 0 );
-
-	    // Set length of vector to desired speed
-		return m.multReference( m_currentSpeed );
+	    SharedWorld.speculate( m_world, DecisionEngine.FLAG_SAFETY_RANGE );
 	}
-	
-	
-	
-    /**
-     * This handler is called whenever a flag loses its "owned" state
-     * 
-     * @param flagIndex Index of the flag which was captured
-     * @param flags List of current flag states
-     */
-    public void onFlagFreed( AiFlagInfo[] flags, int flagIndex )
-    {
-        // Avoid fighting for flags
-        if( !m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + flagIndex ) )
-            m_locker.lock( ActionLocker.ACTION_OWNED_FLAGS + flagIndex, 5 );
-    }
-
-    /**
-     * This handler is called whenever an other bot captures a flag
-     * 
-     * @param flagIndex Index of the flag which was captured
-     * @param flags List of current flag states
-     */
-    public void onOtherCapturedFlag( AiFlagInfo[] flags, int flagIndex )
-    {
-        // We cannot throw a bottle - so rest is not needed
-        if( m_locker.isLocked( ActionLocker.ACTION_THROW_BOTTLE ) )
-            return;
-        
-        Integer index = flags[ flagIndex ].getCurrentOwnerIndex();
-        
-        int[] playerFlags = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
-        
-        // Find out how many flags which player has
-        for( int i = 0; i < flags.length; ++i )
-        {
-            if( flags[ i ].isOwned() )
-                playerFlags[ flags[ i ].getCurrentOwnerIndex() ]++;
-        }
-        
-        // Find out player if is dangerous == max flags
-        int bestPlayerIdx   = -1;
-        int bestPlayerFlags = 0;
-        for( int i = 0; i < ZombieConstants.MAX_NUM_PLAYERS; ++i )
-        {
-            // Player has more than 17% of flags and most flags over all?
-            if( playerFlags[ i ] > bestPlayerFlags && 
-                    playerFlags[ i ] > flags.length / 4 )
-            {
-                bestPlayerIdx = i;
-                bestPlayerFlags = playerFlags[ i ];
-            }
-        }
-        
-        // We are the best? Ignore the event
-        if( bestPlayerIdx == m_player.getPlayerIndex() )
-            return;
-        
-        int nearestFlag = 0;
-        float minDist    = Float.MAX_VALUE;
-        
-        for( int i = 0; i < flags.length; ++i )
-        {
-            // Avoid comparison to captured flag ( distance == 0 )
-            if( i == flagIndex )
-                continue;
-            
-            float distance = flags[ i ].getPosition().sub( flags[ flagIndex ].getPosition() ).length();
-            if( distance < minDist && flags[ i ].getCurrentOwnerIndex() != index )
-            {
-
-                // Can the bottle reach the flag in time?
-                if( m_player.getPosition().sub( flags[ nearestFlag ].getPosition() ).length() / ZombieConstants.BOTTLE_SPEED
-                        < minDist / ZombieConstants.MAX_PLAYER_SPEED + 10 )
-                {
-                    minDist = distance;
-                    nearestFlag = i;
-                }
-            }
-        }
-        
-        // Bottle to player's "next flag"
-        if( minDist < Float.MAX_VALUE )
-        {
-            throwBottle( flags[ nearestFlag ].getPosition() );
-            // Avoid throwing a bottle in next 50 steps
-            m_locker.lock( ActionLocker.ACTION_THROW_BOTTLE, 50 );
-        }
-    }
-
-    /**
-     * This handler is called when our bot captured a flag
-     * 
-     * @param flagIndex Index of the flag that was captured
-     * @param flags List of current flag states
-     */
-    public void onSelfCapturedFlag( AiFlagInfo[] flags, int flagIndex )
-    {
-        // Lock every captured flag for 25 turns to avoid conflicts with other zombies
-        if( !m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + flagIndex ) )
-            m_locker.lock( ActionLocker.ACTION_OWNED_FLAGS + flagIndex, 25 );
-    }
 
 }
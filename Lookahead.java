@@ -0,0 +1,128 @@
+import core.Vector;
+import core.ai.AiMapInfo;
+import core.ai.AiPlayerInfo;
+import core.constants.ZombieConstants;
+
+//#comment Bundle instructions for our java-bind tool, see GeneralPurpose.java
+
+//#include GeneralPurpose.java
+//#include RolloutInput.java
+//#include RolloutWorker.java
+//#include RolloutPlanner.java
+
+
+/**
+ * Lookahead player class
+ *
+ * Variant of GeneralPurpose which does not react greedily but simulates
+ * the next ticks for a set of candidate movements (Monte Carlo rollouts)
+ * and takes the best one. The DecisionEngine of GeneralPurpose is still
+ * asked every tick, so flag handling and bottle throwing work exactly as
+ * in GeneralPurpose. The candidates are not faster than the speed the
+ * SpeedController of GeneralPurpose chose, so we are never louder than
+ * GeneralPurpose. The greedy movement of GeneralPurpose is used if no
+ * rollout finished in time.
+ * @see RolloutPlanner
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+public class Lookahead extends GeneralPurpose
+{
+	//! Time the rollouts may take per tick
+	static final long TIME_BUDGET_NANOS = 4000000L;
+
+	//! Number of candidate directions per speed
+	static final int NUM_DIRECTIONS = 16;
+
+	//! Number of simulated ticks per rollout
+	static final int HORIZON = 8;
+
+	//! Rollout planner (lives as long as the game)
+	RolloutPlanner m_rollouts = null;
+
+	//! Reused buffer for the indices of the zombies near us
+	int[] m_nearZombies = new int[ 0 ];
+
+	/**
+	 * Name of the bot
+	 * @return Displayed name of the bot
+	 */
+	@Override
+	public String getName( )
+	{
+		return "Lookahead";
+	}
+
+	/**
+	 * Start the rollout workers in addition to the GeneralPurpose helpers.
+	 */
+	@Override
+	public void onGameStarted( String gameTypeName, AiMapInfo map, AiPlayerInfo ownPlayer )
+	{
+	    super.onGameStarted( gameTypeName, map, ownPlayer );
+
+	    // Workers of the last game are not needed anymore
+	    if( m_rollouts != null )
+	        m_rollouts.shutdown();
+
+	    m_rollouts = new RolloutPlanner( NUM_DIRECTIONS, HORIZON,
+	                                     ZombieConstants.MAX_PLAYER_SPEED,
+	                                     ZombieConstants.MAX_PLAYER_VOLUME_RADIUS,
+	                                     ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS,
+	                                     ZombieConstants.MAP_RADIUS,
+	                                     Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Core method called by the game to get the next action our bot will
+	 * perform.
+	 *
+	 * @param map Global game situation
+	 * @param ownPlayer Information on our position etc.
+	 *
+	 * @return Vector indicating the direction to move, length ~ speed
+	 */
+	@Override
+	public Vector think( AiMapInfo map, AiPlayerInfo ownPlayer )
+	{
+	    long deadline = System.nanoTime() + TIME_BUDGET_NANOS;
+	    m_diagnostics.beginTick();
+
+	    // Same world update and target selection as GeneralPurpose
+	    Movement m = decide( map, ownPlayer );
+	    Vector greedy = new Vector( m.getX(), m.getY() );
+	    int targetFlag = m_state.getTargetFlag();
+
+	    // Only zombies which can reach us during a rollout are simulated
+	    Vector pos = ownPlayer.getPosition();
+	    float zombieStep = m_world.getMaxZombieStep();
+	    if( m_nearZombies.length < m_world.getNumZombies() )
+	        m_nearZombies = new int[ m_world.getNumZombies() ];
+
+	    int numNear = m_world.getZombieGrid().collectInRange( pos.x, pos.y,
+	            m_rollouts.getRelevantRange( zombieStep ),
+	            m_nearZombies, 0 );
+	    m_rollouts.setZombies( m_world.getZombieX(), m_world.getZombieY(),
+	                           m_world.getZombieNextX(), m_world.getZombieNextY(),
+	                           m_nearZombies, numNear, zombieStep );
+
+	    boolean hasTarget = targetFlag >= 0;
+	    int best = m_rollouts.evaluate( pos.x, pos.y,
+	            hasTarget ? m_world.getFlagX()[ targetFlag ] : pos.x,
+	            hasTarget ? m_world.getFlagY()[ targetFlag ] : pos.y,
+	            hasTarget, m_state.m_currentSpeed, deadline );
+
+	    // No rollout in time? -> greedy decision
+	    Vector result = best < 0 ? greedy
+	            : new Vector( m_rollouts.getCandidateX( best ), m_rollouts.getCandidateY( best ) );
+
+	    // think() is overridden, so the speculation of the next tick has to be
+	    // requested here, too. The speculator is one thread per JVM: if another
+	    // of our bots already asked for the next tick (or the speculator is
+	    // still busy), the request is dropped and all bots use the same guess.
+	    finishTick( result.length() );
+
+	    m_diagnostics.endTick( m_state.m_cache, m_state.m_observer.getDroppedEvents() );
+	    return result;
+	}
+}
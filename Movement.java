@@ -0,0 +1,101 @@
+/**
+ * Result of a decision of the DecisionEngine
+ *
+ * Contains the movement vector (direction and speed) and, if the bot
+ * decided to do so, the target of a bottle to throw. Only primitive
+ * values are used, so the result can be used without the game.
+ * @see DecisionEngine
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class Movement
+{
+    //! Movement vector, length ~ speed
+    private float m_x = 0;
+    private float m_y = 0;
+    //! Throw a bottle this tick?
+    private boolean m_throwBottle = false;
+    //! Target of the bottle
+    private float m_bottleX = 0;
+    private float m_bottleY = 0;
+
+    /**
+     * Get the x component of the movement
+     * @return x component of the movement vector
+     */
+    public float getX()
+    {
+        return m_x;
+    }
+
+    /**
+     * Get the y component of the movement
+     * @return y component of the movement vector
+     */
+    public float getY()
+    {
+        return m_y;
+    }
+
+    /**
+     * Check if a bottle should be thrown this tick
+     * @return true, if a bottle should be thrown
+     */
+    public boolean isThrowingBottle()
+    {
+        return m_throwBottle;
+    }
+
+    /**
+     * Get the x coordinate of the bottle target
+     * @return x coordinate of the target (only valid if isThrowingBottle())
+     */
+    public float getBottleX()
+    {
+        return m_bottleX;
+    }
+
+    /**
+     * Get the y coordinate of the bottle target
+     * @return y coordinate of the target (only valid if isThrowingBottle())
+     */
+    public float getBottleY()
+    {
+        return m_bottleY;
+    }
+
+    /**
+     * Reset the movement to "stand still, no bottle".
+     */
+    void clear()
+    {
+        m_x = 0;
+        m_y = 0;
+        m_throwBottle = false;
+    }
+
+    /**
+     * Set the movement vector
+     *
+     * @param x x component of the movement
+     * @param y y component of the movement
+     */
+    void set( float x, float y )
+    {
+        m_x = x;
+        m_y = y;
+    }
+
+    /**
+     * Throw a bottle to the given position
+     *
+     * @param x x coordinate of the target
+     * @param y y coordinate of the target
+     */
+    void throwBottle( float x, float y )
+    {
+        m_throwBottle = true;
+        m_bottleX = x;
+        m_bottleY = y;
+    }
+}
@@ -0,0 +1,179 @@
+import core.constants.ZombieConstants;
+
+/**
+ * Statistics about how the players capture flags
+ *
+ * Fed with the capture events of the FlagObserver, the model remembers
+ * for every player the last captured flag, the number of captures and
+ * the (smoothed) number of ticks between two captures. Transitions
+ * "flag a captured, then flag b captured by the same player" are counted
+ * for every player on his own, as the players follow different routes:
+ * every flag of a player keeps a few successor slots with counts (the
+ * least frequent slot is replaced by new successors), and the index of
+ * its most frequent slot is updated on every count. So the most likely
+ * next flag of a player is two array lookups.
+ *
+ * @note The model is only used by the consumer of the flag events (the
+ *       engine within the tick or the FlagEventWorker).
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class OpponentModel
+{
+    //! Successor slots per flag
+    static final int SLOTS = 4;
+    //! Transitions a successor needs before it is predicted
+    static final int MIN_TRANSITIONS = 2;
+    //! Weight of a new interval in the smoothed inter-capture time
+    static final float INTERVAL_SMOOTHING = 0.25f;
+
+    //! Number of flags
+    private final int m_numFlags;
+
+    //! Successors of every flag of every player ((player * numFlags + flag) * SLOTS + slot,
+    //! -1 if unused) and their counts
+    private final int[] m_successor;
+    private final int[] m_count;
+    //! Slot with the highest count of every flag of every player (player * numFlags + flag)
+    private final int[] m_bestSlot;
+
+    //! Last captured flag (-1 if none), its tick and number of captures of every player
+    private final int[] m_lastFlag = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
+    private final int[] m_lastTick = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
+    private final int[] m_captures = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
+    //! Smoothed number of ticks between two captures of every player
+    private final float[] m_interval = new float[ ZombieConstants.MAX_NUM_PLAYERS ];
+
+    /**
+     * Create an empty model
+     *
+     * @param numFlags Number of flags in the game
+     */
+    public OpponentModel( int numFlags )
+    {
+        assert numFlags >= 0 : "Number of flags cannot be negative";
+
+        m_numFlags  = numFlags;
+        m_successor = new int[ ZombieConstants.MAX_NUM_PLAYERS * numFlags * SLOTS ];
+        m_count     = new int[ ZombieConstants.MAX_NUM_PLAYERS * numFlags * SLOTS ];
+        m_bestSlot  = new int[ ZombieConstants.MAX_NUM_PLAYERS * numFlags ];
+
+        for( int i = 0; i < m_successor.length; ++i )
+            m_successor[ i ] = -1;
+        for( int p = 0; p < ZombieConstants.MAX_NUM_PLAYERS; ++p )
+            m_lastFlag[ p ] = -1;
+    }
+
+    /**
+     * A player captured a flag
+     *
+     * @param player Index of the player
+     * @param flag Index of the flag
+     * @param tick Tick of the capture
+     */
+    public void onCapture( int player, int flag, int tick )
+    {
+        assert flag >= 0 && flag < m_numFlags : "Invalid flag: " + flag;
+
+        int last = m_lastFlag[ player ];
+        if( last >= 0 )
+        {
+            if( last != flag )
+                countTransition( player * m_numFlags + last, flag );
+
+            float interval = tick - m_lastTick[ player ];
+            m_interval[ player ] = m_captures[ player ] == 1 ? interval
+                    : m_interval[ player ] + INTERVAL_SMOOTHING * ( interval - m_interval[ player ] );
+        }
+
+        m_lastFlag[ player ] = flag;
+        m_lastTick[ player ] = tick;
+        ++m_captures[ player ];
+    }
+
+    /**
+     * Get the flag a player will most likely capture next: the most
+     * frequent successor of his last captured flag
+     *
+     * @param player Index of the player
+     * @return Index of the flag or -1 if there is not enough data
+     */
+    public int predictNext( int player )
+    {
+        int last = m_lastFlag[ player ];
+        if( last < 0 )
+            return -1;
+
+        int from = player * m_numFlags + last;
+        int s = from * SLOTS + m_bestSlot[ from ];
+        return m_count[ s ] >= MIN_TRANSITIONS ? m_successor[ s ] : -1;
+    }
+
+    /**
+     * Get the last flag a player captured
+     *
+     * @param player Index of the player
+     * @return Index of the flag or -1 if he did not capture one yet
+     */
+    public int getLastFlag( int player )
+    {
+        return m_lastFlag[ player ];
+    }
+
+    /**
+     * Get the number of flags a player captured
+     *
+     * @param player Index of the player
+     * @return Number of captures
+     */
+    public int getCaptures( int player )
+    {
+        return m_captures[ player ];
+    }
+
+    /**
+     * Get the smoothed number of ticks between two captures of a player
+     *
+     * @param player Index of the player
+     * @return Number of ticks or 0 if he captured less than two flags
+     */
+    public float getCaptureInterval( int player )
+    {
+        return m_interval[ player ];
+    }
+
+    /**
+     * Count the transition from one flag to another
+     *
+     * @param from Flag of the player the transition starts at (player * numFlags + flag)
+     * @param to Index of the next flag
+     */
+    private void countTransition( int from, int to )
+    {
+        int base = from * SLOTS;
+
+        // Known successor or free slot? Otherwise replace the least frequent one
+        int slot = -1, min = 0;
+        for( int k = 0; k < SLOTS; ++k )
+        {
+            int successor = m_successor[ base + k ];
+            if( successor == to || successor < 0 )
+            {
+                slot = k;
+                break;
+            }
+            if( slot < 0 || m_count[ base + k ] < min )
+            {
+                slot = k;
+                min = m_count[ base + k ];
+            }
+        }
+
+        // A replaced successor inherits the count (keeps heavy hitters on top)
+        m_successor[ base + slot ] = to;
+        ++m_count[ base + slot ];
+
+        if( m_count[ base + slot ] > m_count[ base + m_bestSlot[ from ] ] )
+            m_bestSlot[ from ] = slot;
+    }
+}
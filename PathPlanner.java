@@ -0,0 +1,400 @@
+/**
+ * Path planner for the circular map (D* Lite)
+ *
+ * The map disk is discretized into a square grid of cells. Every cell
+ * has a cost which grows with the number of zombies near it, so paths
+ * avoid hordes instead of walking straight through them. Cells outside
+ * the disk cannot be entered.
+ *
+ * Planning is done with D* Lite: the search runs backwards from the goal,
+ * and when the bot moves or zombies change the cell costs, only the
+ * affected part of the search is repaired instead of planning from
+ * scratch every tick. A search is bound to its goal, and the target flag
+ * changes often (route flags are skipped, unsafe flags are avoided for a
+ * while), so the planner keeps the searches of the MAX_SEARCHES goals
+ * used last. Going back to one of them repairs it; only a goal which is
+ * not kept needs a new search (replacing the one unused the longest).
+ * Repairing is not always cheaper, though: if zombies changed the costs
+ * of a large part of the grid since a search was used, it is started
+ * from scratch instead.
+ *
+ * The cell costs only change around zombies, so updateCosts() looks at
+ * the cells near the zombies of this and of the last update, not at the
+ * whole grid.
+ *
+ * The planner does not use any game classes, so it can also be used by
+ * simulations and benchmarks.
+ * @see PathSearch
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class PathPlanner
+{
+    //! Value used for unreachable cells (small enough to add two of them)
+    static final int INF = Integer.MAX_VALUE / 4;
+    //! Length of a straight and of a diagonal step in integer units. Integer
+    //! costs avoid rounding errors, which would break the key comparisons.
+    private static final int STRAIGHT = 10;
+    private static final int DIAGONAL = 14;
+    //! Neighbor offsets (8-connected grid)
+    private static final int[] DX = {  1, -1,  0,  0,  1,  1, -1, -1 };
+    private static final int[] DY = {  0,  0,  1, -1,  1, -1,  1, -1 };
+    //! Number of neighbors of a cell
+    static final int NUM_DIRECTIONS = DX.length;
+    //! Number of path cells to look ahead when choosing the waypoint
+    private static final int LOOKAHEAD = 3;
+    //! Number of goals whose searches are kept (every search holds
+    //! about 30 bytes per cell)
+    static final int MAX_SEARCHES = 4;
+    //! A search with more changed cells than 1 / REPAIR_LIMIT of the grid
+    //! is started from scratch, repairing it would expand more cells
+    private static final int REPAIR_LIMIT = 16;
+
+    //! Number of cells per axis
+    private final int m_n;
+    //! Edge length of a cell
+    private final float m_cellSize;
+    //! Radius of the map (the map is centered at the origin)
+    private final float m_radius;
+    //! Zombies closer than this to a cell center make the cell more expensive
+    private final float m_dangerRadius;
+    //! Additional cost of a cell per zombie near it
+    private final int m_dangerWeight;
+
+    //! Cells outside the map
+    private final boolean[] m_blocked;
+    //! Number of zombies near every cell
+    private final int[] m_danger;
+    //! Scratch array for the new danger values (all 0 between updates)
+    private final int[] m_newDanger;
+    //! Cells with zombies near them (danger > 0)
+    private int[] m_dangerCells;
+    private int m_numDangerCells = 0;
+    //! Scratch list of the cells touched by the current update
+    private int[] m_touched;
+
+    //! Searches of the goals used last (created when needed)
+    private final PathSearch[] m_searches = new PathSearch[ MAX_SEARCHES ];
+    private int m_numSearches = 0;
+    //! Search used by the last call of plan() (null if there was none)
+    private PathSearch m_search = null;
+    //! Start cell of the last call of plan()
+    private int m_start = -1;
+    //! Number of calls of plan() so far
+    private long m_calls = 0;
+
+    /**
+     * Create a planner for a circular map
+     *
+     * @param radius Radius of the map (centered at the origin)
+     * @param resolution Number of cells per axis
+     * @param dangerRadius Distance in which zombies make a cell more expensive
+     * @param dangerWeight Additional cost per zombie near a cell (a free cell costs 1)
+     */
+    public PathPlanner( float radius, int resolution, float dangerRadius, int dangerWeight )
+    {
+        assert radius > 0 : "Map radius has to be positive";
+        assert resolution > 1 : "Resolution too small: " + resolution;
+        assert dangerWeight >= 0 : "Negative danger weight";
+
+        m_n = resolution;
+        m_radius = radius;
+        m_cellSize = 2.0f * radius / resolution;
+        m_dangerRadius = dangerRadius;
+        m_dangerWeight = dangerWeight;
+
+        int numCells = m_n * m_n;
+        m_blocked     = new boolean[ numCells ];
+        m_danger      = new int[ numCells ];
+        m_newDanger   = new int[ numCells ];
+        m_dangerCells = new int[ numCells ];
+        m_touched     = new int[ numCells ];
+
+        // Cells whose center is too far outside are not part of the map. The
+        // tolerance ensures every position on the map has a free cell.
+        float limit = radius + m_cellSize * 0.75f;
+        for( int v = 0; v < numCells; ++v )
+        {
+            float cx = centerX( v ), cy = centerY( v );
+            m_blocked[ v ] = cx * cx + cy * cy > limit * limit;
+        }
+    }
+
+    /**
+     * Update the cell costs from the zombie positions. The changed cells are
+     * remembered by every kept search and repaired when it is used again.
+     *
+     * @param zombieX x coordinates of the zombies
+     * @param zombieY y coordinates of the zombies
+     * @param numZombies Number of zombies
+     */
+    public void updateCosts( float[] zombieX, float[] zombieY, int numZombies )
+    {
+        // Splat every zombie onto the cells around it
+        int reach = (int)Math.ceil( m_dangerRadius / m_cellSize );
+        float rangeSq = m_dangerRadius * m_dangerRadius;
+        int numTouched = 0;
+
+        for( int i = 0; i < numZombies; ++i )
+        {
+            int zx = column( zombieX[ i ] ), zy = column( zombieY[ i ] );
+
+            for( int y = Math.max( 0, zy - reach ); y <= Math.min( m_n - 1, zy + reach ); ++y )
+            {
+                for( int x = Math.max( 0, zx - reach ); x <= Math.min( m_n - 1, zx + reach ); ++x )
+                {
+                    int v = y * m_n + x;
+                    float dx = centerX( v ) - zombieX[ i ];
+                    float dy = centerY( v ) - zombieY[ i ];
+
+                    if( dx * dx + dy * dy <= rangeSq && m_newDanger[ v ]++ == 0 )
+                        m_touched[ numTouched++ ] = v;
+                }
+            }
+        }
+
+        // Cells with zombies near them now
+        for( int t = 0; t < numTouched; ++t )
+        {
+            int v = m_touched[ t ];
+            if( m_newDanger[ v ] != m_danger[ v ] )
+            {
+                m_danger[ v ] = m_newDanger[ v ];
+                markChanged( v );
+            }
+        }
+
+        // Cells the zombies left
+        for( int t = 0; t < m_numDangerCells; ++t )
+        {
+            int v = m_dangerCells[ t ];
+            if( m_newDanger[ v ] == 0 )
+            {
+                m_danger[ v ] = 0;
+                markChanged( v );
+            }
+        }
+
+        // The touched cells are the dangerous cells of the next update
+        for( int t = 0; t < numTouched; ++t )
+            m_newDanger[ m_touched[ t ] ] = 0;
+
+        int[] swap = m_dangerCells;
+        m_dangerCells = m_touched;
+        m_touched = swap;
+        m_numDangerCells = numTouched;
+    }
+
+    /**
+     * Plan (or repair) the path from a start position to a goal position.
+     * A new search is only started if the goal cell is none of the last
+     * MAX_SEARCHES goals.
+     *
+     * @param startX x coordinate of the start position
+     * @param startY y coordinate of the start position
+     * @param goalX x coordinate of the goal position
+     * @param goalY y coordinate of the goal position
+     * @param out Receives the direction (x, y) to move to; not normalized
+     *
+     * @return true, if a path was found, false if the goal is unreachable
+     */
+    public boolean plan( float startX, float startY, float goalX, float goalY, float[] out )
+    {
+        assert out.length >= 2 : "Output array too small";
+
+        int start = cellOf( startX, startY );
+        int goal  = cellOf( goalX, goalY );
+
+        if( m_blocked[ start ] || m_blocked[ goal ] )
+            return false;
+
+        m_search = searchFor( start, goal );
+        m_search.m_lastUse = ++m_calls;
+        m_start = start;
+        m_search.repair( start );
+
+        if( m_search.getCost( start ) == INF )
+            return false;
+
+        // Follow the cheapest neighbors for a few cells
+        int cell = start;
+        for( int step = 0; step < LOOKAHEAD && cell != goal; ++step )
+        {
+            int next = -1;
+            int best = INF;
+            for( int d = 0; d < NUM_DIRECTIONS; ++d )
+            {
+                int u = neighbor( cell, d );
+                if( u < 0 )
+                    continue;
+
+                int c = cost( cell, d ) + m_search.getCost( u );
+                if( c < best )
+                {
+                    best = c;
+                    next = u;
+                }
+            }
+
+            if( next < 0 )
+                break;
+            cell = next;
+        }
+
+        // Aim at the real goal once it is reached, at cell centers otherwise
+        if( cell == goal )
+        {
+            out[ 0 ] = goalX - startX;
+            out[ 1 ] = goalY - startY;
+        }
+        else
+        {
+            out[ 0 ] = centerX( cell ) - startX;
+            out[ 1 ] = centerY( cell ) - startY;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the cost of the path found by the last call of plan() (in the
+     * integer units of the planner: step length times cell costs).
+     *
+     * @return Cost from the start to the goal cell or -1 if there is none
+     */
+    public int getPathCost()
+    {
+        if( m_search == null || m_search.getCost( m_start ) >= INF )
+            return -1;
+
+        return m_search.getCost( m_start );
+    }
+
+    /**
+     * Get the number of cells expanded by the last search.
+     * @return Number of expanded cells
+     */
+    public int getExpansions()
+    {
+        return m_search == null ? 0 : m_search.getExpansions();
+    }
+
+    /**
+     * Get the kept search of a goal or start a new one, replacing the search
+     * unused the longest if MAX_SEARCHES are kept already. A kept search
+     * with too many changed cells is started from scratch, too.
+     */
+    private PathSearch searchFor( int start, int goal )
+    {
+        PathSearch oldest = null;
+        for( int s = 0; s < m_numSearches; ++s )
+        {
+            PathSearch search = m_searches[ s ];
+            if( search.getGoal() == goal )
+            {
+                if( search.getNumChanged() * REPAIR_LIMIT > m_n * m_n )
+                    search.initialize( start, goal );
+                return search;
+            }
+
+            if( oldest == null || search.m_lastUse < oldest.m_lastUse )
+                oldest = search;
+        }
+
+        if( m_numSearches < MAX_SEARCHES )
+        {
+            oldest = new PathSearch( this, m_n * m_n );
+            m_searches[ m_numSearches++ ] = oldest;
+        }
+
+        oldest.initialize( start, goal );
+        return oldest;
+    }
+
+    /**
+     * Tell all kept searches that the cost of a cell changed.
+     */
+    private void markChanged( int v )
+    {
+        for( int s = 0; s < m_numSearches; ++s )
+            m_searches[ s ].markChanged( v );
+    }
+
+    /**
+     * Cost of moving from a cell to its neighbor in the given direction
+     * (step length times the sum of both cell costs).
+     */
+    int cost( int u, int d )
+    {
+        int v = neighbor( u, d );
+        if( m_blocked[ u ] || m_blocked[ v ] )
+            return INF;
+
+        int length = d < 4 ? STRAIGHT : DIAGONAL;
+        int cu = 1 + m_dangerWeight * m_danger[ u ];
+        int cv = 1 + m_dangerWeight * m_danger[ v ];
+
+        return Math.min( INF, length * ( cu + cv ) );
+    }
+
+    /**
+     * Octile distance between two cells (cells cost at least 1, so this
+     * never overestimates).
+     */
+    int heuristic( int a, int b )
+    {
+        int dx = Math.abs( a % m_n - b % m_n );
+        int dy = Math.abs( a / m_n - b / m_n );
+
+        return 2 * ( STRAIGHT * Math.max( dx, dy ) + ( DIAGONAL - STRAIGHT ) * Math.min( dx, dy ) );
+    }
+
+    /**
+     * Get the neighbor of a cell in the given direction.
+     *
+     * @return Index of the neighbor or -1 if it is outside the grid
+     */
+    int neighbor( int v, int d )
+    {
+        int x = v % m_n + DX[ d ];
+        int y = v / m_n + DY[ d ];
+
+        if( x < 0 || y < 0 || x >= m_n || y >= m_n )
+            return -1;
+
+        return y * m_n + x;
+    }
+
+    /**
+     * Get the (clamped) column or row of a coordinate
+     */
+    private int column( float c )
+    {
+        int i = (int)Math.floor( ( c + m_radius ) / m_cellSize );
+        return Math.max( 0, Math.min( m_n - 1, i ) );
+    }
+
+    /**
+     * Get the cell of a position
+     */
+    private int cellOf( float x, float y )
+    {
+        return column( y ) * m_n + column( x );
+    }
+
+    /**
+     * x coordinate of the center of a cell
+     */
+    private float centerX( int v )
+    {
+        return ( v % m_n + 0.5f ) * m_cellSize - m_radius;
+    }
+
+    /**
+     * y coordinate of the center of a cell
+     */
+    private float centerY( int v )
+    {
+        return ( v / m_n + 0.5f ) * m_cellSize - m_radius;
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.Arrays;
+
+/**
+ * One D* Lite search of the PathPlanner, rooted at a fixed goal cell
+ *
+ * The search runs backwards from its goal, so its cost-to-goal values stay
+ * valid while the start moves. The planner reports every cell whose cost
+ * changed; the search collects them and repairs the affected part the next
+ * time it is used. Since the goal never changes, a search is only started
+ * from scratch when it is created for a new goal or when the planner finds
+ * that too many cells changed for a repair to pay off.
+ * @see PathPlanner
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class PathSearch
+{
+    //! Planner providing the grid and the cell costs
+    private final PathPlanner m_planner;
+
+    //! D* Lite state: cost-to-goal estimates and one-step lookahead values
+    private final int[] m_g;
+    private final int[] m_rhs;
+    //! Priority queue (binary heap of cells with their keys)
+    private final int[] m_heap;
+    private final int[] m_heapPos;
+    private final int[] m_key1;
+    private final int[] m_key2;
+    private int m_heapSize = 0;
+
+    //! Cells whose cost changed since the last repair
+    private final int[] m_pending;
+    private final boolean[] m_isPending;
+    private int m_numPending = 0;
+
+    //! Current start and goal cell (-1 if the search was not started yet)
+    private int m_start = -1;
+    private int m_goal  = -1;
+    //! Start cell at the time of the last key modifier update
+    private int m_last  = -1;
+    //! Key modifier (accumulated heuristic of start movements)
+    private int m_km    = 0;
+
+    //! Number of cells expanded by the last repair (for diagnostics)
+    private int m_expansions = 0;
+    //! Planner call in which the search was used last (for replacement)
+    long m_lastUse = 0;
+
+    /**
+     * Create an empty search
+     *
+     * @param planner Planner providing the grid and the cell costs
+     * @param numCells Number of cells of the grid
+     */
+    PathSearch( PathPlanner planner, int numCells )
+    {
+        m_planner   = planner;
+        m_g         = new int[ numCells ];
+        m_rhs       = new int[ numCells ];
+        m_heap      = new int[ numCells ];
+        m_heapPos   = new int[ numCells ];
+        m_key1      = new int[ numCells ];
+        m_key2      = new int[ numCells ];
+        m_pending   = new int[ numCells ];
+        m_isPending = new boolean[ numCells ];
+    }
+
+    /**
+     * Start a new search for a goal.
+     */
+    void initialize( int start, int goal )
+    {
+        Arrays.fill( m_g, PathPlanner.INF );
+        Arrays.fill( m_rhs, PathPlanner.INF );
+        Arrays.fill( m_heapPos, -1 );
+        m_heapSize = 0;
+        clearPending();
+
+        m_start = start;
+        m_last  = start;
+        m_goal  = goal;
+        m_km    = 0;
+
+        m_rhs[ goal ] = 0;
+        insert( goal, m_planner.heuristic( start, goal ), 0 );
+    }
+
+    /**
+     * Remember a cell whose cost changed (repaired by the next call of repair()).
+     */
+    void markChanged( int v )
+    {
+        if( m_goal < 0 || m_isPending[ v ] )
+            return;
+
+        m_isPending[ v ] = true;
+        m_pending[ m_numPending++ ] = v;
+    }
+
+    /**
+     * Move the start and repair the search around the changed cells until
+     * the start is consistent again.
+     *
+     * @param start The new start cell
+     */
+    void repair( int start )
+    {
+        // Moving the start changes all keys -> use the key modifier
+        if( start != m_last )
+        {
+            m_km += m_planner.heuristic( m_last, start );
+            m_last = start;
+        }
+        m_start = start;
+
+        // Repair the edges around cells with changed costs
+        for( int p = 0; p < m_numPending; ++p )
+        {
+            int v = m_pending[ p ];
+            updateVertex( v );
+            for( int d = 0; d < PathPlanner.NUM_DIRECTIONS; ++d )
+            {
+                int u = m_planner.neighbor( v, d );
+                if( u >= 0 )
+                    updateVertex( u );
+            }
+        }
+        clearPending();
+
+        computeShortestPath();
+    }
+
+    /**
+     * Get the goal cell of the search.
+     * @return Goal cell or -1 if the search was not started yet
+     */
+    int getGoal()
+    {
+        return m_goal;
+    }
+
+    /**
+     * Get the number of cells changed since the last repair.
+     * @return Number of changed cells
+     */
+    int getNumChanged()
+    {
+        return m_numPending;
+    }
+
+    /**
+     * Get the cost-to-goal of a cell (valid for the start after repair()).
+     * @return Cost or PathPlanner.INF if the goal cannot be reached
+     */
+    int getCost( int v )
+    {
+        return m_g[ v ];
+    }
+
+    /**
+     * Get the number of cells expanded by the last repair.
+     * @return Number of expanded cells
+     */
+    int getExpansions()
+    {
+        return m_expansions;
+    }
+
+    /**
+     * Process the queue until the start cell is consistent.
+     */
+    private void computeShortestPath()
+    {
+        m_expansions = 0;
+
+        while( m_heapSize > 0 )
+        {
+            int u = m_heap[ 0 ];
+            int k1 = m_key1[ u ], k2 = m_key2[ u ];
+
+            // Stop if the start is consistent and no queued key is smaller
+            int startMin = Math.min( m_g[ m_start ], m_rhs[ m_start ] );
+            if( !less( k1, k2, key( m_start, startMin ), startMin ) &&
+                    m_rhs[ m_start ] == m_g[ m_start ] )
+                break;
+
+            ++m_expansions;
+
+            // Outdated key? -> reinsert with the current key
+            int min = Math.min( m_g[ u ], m_rhs[ u ] );
+            int n1 = key( u, min );
+            if( less( k1, k2, n1, min ) )
+            {
+                update( u, n1, min );
+                continue;
+            }
+
+            remove( u );
+
+            if( m_g[ u ] > m_rhs[ u ] )
+            {
+                // Overconsistent -> cost is final
+                m_g[ u ] = m_rhs[ u ];
+                for( int d = 0; d < PathPlanner.NUM_DIRECTIONS; ++d )
+                {
+                    int s = m_planner.neighbor( u, d );
+                    if( s >= 0 )
+                        updateVertex( s );
+                }
+            }
+            else
+            {
+                // Underconsistent -> cost got worse, propagate
+                m_g[ u ] = PathPlanner.INF;
+                updateVertex( u );
+                for( int d = 0; d < PathPlanner.NUM_DIRECTIONS; ++d )
+                {
+                    int s = m_planner.neighbor( u, d );
+                    if( s >= 0 )
+                        updateVertex( s );
+                }
+            }
+        }
+    }
+
+    /**
+     * Recalculate the lookahead value of a cell and fix its queue state.
+     */
+    private void updateVertex( int u )
+    {
+        if( u != m_goal )
+        {
+            int best = PathPlanner.INF;
+            for( int d = 0; d < PathPlanner.NUM_DIRECTIONS; ++d )
+            {
+                int s = m_planner.neighbor( u, d );
+                if( s >= 0 )
+                    best = Math.min( best, m_planner.cost( u, d ) + m_g[ s ] );
+            }
+            m_rhs[ u ] = Math.min( best, PathPlanner.INF );
+        }
+
+        if( m_g[ u ] != m_rhs[ u ] )
+        {
+            int min = Math.min( m_g[ u ], m_rhs[ u ] );
+            int k1 = key( u, min );
+
+            if( m_heapPos[ u ] >= 0 )
+                update( u, k1, min );
+            else
+                insert( u, k1, min );
+        }
+        else if( m_heapPos[ u ] >= 0 )
+        {
+            remove( u );
+        }
+    }
+
+    /**
+     * First component of the queue key of a cell
+     *
+     * @param u The cell
+     * @param min Minimum of g and rhs of the cell
+     */
+    private int key( int u, int min )
+    {
+        if( min >= PathPlanner.INF )
+            return PathPlanner.INF;
+
+        return min + m_planner.heuristic( m_start, u ) + m_km;
+    }
+
+    /**
+     * Forget the changed cells (after they were repaired or a new search was started).
+     */
+    private void clearPending()
+    {
+        for( int p = 0; p < m_numPending; ++p )
+            m_isPending[ m_pending[ p ] ] = false;
+        m_numPending = 0;
+    }
+
+    /**
+     * Lexicographic key comparison: (a1, a2) < (b1, b2)
+     */
+    private static boolean less( int a1, int a2, int b1, int b2 )
+    {
+        return a1 < b1 || ( a1 == b1 && a2 < b2 );
+    }
+
+    /**
+     * Insert a cell into the queue
+     */
+    private void insert( int v, int k1, int k2 )
+    {
+        m_key1[ v ] = k1;
+        m_key2[ v ] = k2;
+        m_heap[ m_heapSize ] = v;
+        m_heapPos[ v ] = m_heapSize;
+        siftUp( m_heapSize++ );
+    }
+
+    /**
+     * Change the key of a cell which is already in the queue
+     */
+    private void update( int v, int k1, int k2 )
+    {
+        boolean up = less( k1, k2, m_key1[ v ], m_key2[ v ] );
+        m_key1[ v ] = k1;
+        m_key2[ v ] = k2;
+
+        if( up )
+            siftUp( m_heapPos[ v ] );
+        else
+            siftDown( m_heapPos[ v ] );
+    }
+
+    /**
+     * Remove a cell from the queue
+     */
+    private void remove( int v )
+    {
+        int i = m_heapPos[ v ];
+        m_heapPos[ v ] = -1;
+
+        if( --m_heapSize == i )
+            return;
+
+        // Move last element into the gap and restore the heap order
+        int last = m_heap[ m_heapSize ];
+        m_heap[ i ] = last;
+        m_heapPos[ last ] = i;
+        siftUp( i );
+        siftDown( m_heapPos[ last ] );
+    }
+
+    /**
+     * Move the heap element at position i up until the heap order is restored
+     */
+    private void siftUp( int i )
+    {
+        int v = m_heap[ i ];
+        while( i > 0 )
+        {
+            int parent = ( i - 1 ) / 2;
+            int p = m_heap[ parent ];
+            if( !less( m_key1[ v ], m_key2[ v ], m_key1[ p ], m_key2[ p ] ) )
+                break;
+
+            m_heap[ i ] = p;
+            m_heapPos[ p ] = i;
+            i = parent;
+        }
+        m_heap[ i ] = v;
+        m_heapPos[ v ] = i;
+    }
+
+    /**
+     * Move the heap element at position i down until the heap order is restored
+     */
+    private void siftDown( int i )
+    {
+        int v = m_heap[ i ];
+        while( true )
+        {
+            int child = 2 * i + 1;
+            if( child >= m_heapSize )
+                break;
+
+            int c = m_heap[ child ];
+            if( child + 1 < m_heapSize )
+            {
+                int r = m_heap[ child + 1 ];
+                if( less( m_key1[ r ], m_key2[ r ], m_key1[ c ], m_key2[ c ] ) )
+                {
+                    ++child;
+                    c = r;
+                }
+            }
+
+            if( !less( m_key1[ c ], m_key2[ c ], m_key1[ v ], m_key2[ v ] ) )
+                break;
+
+            m_heap[ i ] = c;
+            m_heapPos[ c ] = i;
+            i = child;
+        }
+        m_heap[ i ] = v;
+        m_heapPos[ v ] = i;
+    }
+}
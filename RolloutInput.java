@@ -0,0 +1,50 @@
+/**
+ * Input of one evaluation of the rollout planner
+ *
+ * The planner fills an input before it hands it to the workers and does
+ * not touch it again while a worker still uses it, so a worker which is
+ * late from the last tick keeps reading consistent data while the next
+ * evaluation is prepared in another input.
+ * @see RolloutPlanner
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class RolloutInput
+{
+    //! Positions and movements of the simulated zombies
+    float[] m_zombieX = new float[ 0 ];
+    float[] m_zombieY = new float[ 0 ];
+    float[] m_zombieVX = new float[ 0 ];
+    float[] m_zombieVY = new float[ 0 ];
+    int     m_numZombies = 0;
+
+    //! Distance at which a zombie catches us
+    float   m_catchRadius = 0;
+
+    //! Position of our player and of the target
+    float   m_playerX, m_playerY;
+    float   m_targetX, m_targetY;
+    boolean m_hasTarget = false;
+    //! Speed limit of the candidates (relative to the maximum speed)
+    float   m_maxSpeed = 1;
+
+    //! Value of System.nanoTime() at which the rollouts have to stop
+    long    m_deadline = 0;
+
+    /**
+     * Make sure the zombie arrays can hold the given number of zombies.
+     *
+     * @param n Number of zombies
+     */
+    void ensureCapacity( int n )
+    {
+        if( m_zombieX.length >= n )
+            return;
+
+        int capacity = Math.max( n, m_zombieX.length * 2 );
+        m_zombieX  = new float[ capacity ];
+        m_zombieY  = new float[ capacity ];
+        m_zombieVX = new float[ capacity ];
+        m_zombieVY = new float[ capacity ];
+    }
+}
@@ -0,0 +1,475 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time-bounded Monte Carlo lookahead for the movement decision
+ *
+ * A fixed set of candidate movements (directions at a few speeds plus
+ * standing still) is evaluated by simulating the next ticks: our player
+ * keeps the candidate movement, the zombies keep their movement with a
+ * random jitter or chase us if they can hear us. Every rollout is scored
+ * by the progress towards the target, the number of zombies hearing us
+ * and whether we got caught. The candidate with the best average wins.
+ *
+ * The candidates move at most as fast as the caller allows (the speed
+ * the SpeedController chose), so the chosen movement is not louder than
+ * the greedy one. The rollouts are distributed over worker threads (one
+ * per core, the calling thread is one of them) and stop at a hard
+ * deadline, so the number of rollouts adapts to the time available. The
+ * calling thread sleeps while it waits for the other workers. All buffers are
+ * allocated once, so evaluating a tick does not create any objects.
+ * Every evaluation writes its input into an input buffer no busy worker
+ * reads, so workers which are late from the last tick are not disturbed.
+ * @see RolloutWorker
+ * @see RolloutInput
+ *
+ * The planner does not use any game classes.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class RolloutPlanner
+{
+    //! Speeds of the candidate movements (relative to the maximum speed)
+    private static final float[] SPEEDS = { 1.0f, 0.5f, 0.25f };
+    //! Score of a rollout in which we get caught in the first tick
+    private static final float CATCH_PENALTY = 1000.0f;
+    //! Weight of the distance gained towards the target
+    private static final float PROGRESS_WEIGHT = 1.0f;
+    //! Weight of the average number of zombies hearing us per tick
+    private static final float DANGER_WEIGHT = 2.0f;
+    //! Score for reaching the target during a rollout
+    private static final float TARGET_BONUS = 10.0f;
+    //! Penalty per tick spent at the border of the map
+    private static final float BORDER_PENALTY = 1.0f;
+    //! Random change of a zombie's movement per tick (relative to its speed)
+    private static final float JITTER = 0.3f;
+    //! Time a worker may need after the deadline before its results are ignored
+    private static final long GRACE_NANOS = 200000L;
+
+    //! Candidate movements (direction times speed relative to the speed
+    //! limit of the evaluation, speed 0 = standing still)
+    private final float[] m_candidateX;
+    private final float[] m_candidateY;
+    private final int m_numCandidates;
+
+    //! Number of simulated ticks per rollout
+    private final int m_horizon;
+    //! Distance a player moves per tick at speed 1
+    private final float m_playerStep;
+    //! Noise radius of a player at speed 1
+    private final float m_noisePerSpeed;
+    //! Distance at which the target counts as reached
+    private final float m_targetRadius;
+    //! Radius of the map (centered at the origin)
+    private final float m_mapRadius;
+
+    //! Workers running on own threads and the worker of the calling thread
+    private final RolloutWorker[] m_threads;
+    private final RolloutWorker m_inline;
+    //! Number of workers (threads + inline worker)
+    private final int m_numWorkers;
+
+    //! Input buffers (one more than there are threads, so one is always free)
+    private final RolloutInput[] m_inputs;
+    //! Input of the current evaluation (written before the workers are started)
+    private RolloutInput m_input;
+
+    //! Number of the current evaluation (to tell results of late workers apart)
+    private int m_evaluation = 0;
+    //! Speed limit of the last evaluation
+    private float m_maxSpeed = 1;
+
+    //! Accumulated scores and rollout counts of the last evaluation
+    private final float[] m_scores;
+    private final int[] m_rollouts;
+
+    /**
+     * Create a planner and start its worker threads.
+     *
+     * @param numDirections Number of directions per speed
+     * @param horizon Number of simulated ticks per rollout
+     * @param playerStep Distance a player moves per tick at speed 1
+     * @param noisePerSpeed Noise radius of a player at speed 1
+     * @param targetRadius Distance at which the target counts as reached
+     * @param mapRadius Radius of the map
+     * @param numThreads Number of workers including the calling thread
+     */
+    public RolloutPlanner( int numDirections, int horizon, float playerStep, float noisePerSpeed,
+                           float targetRadius, float mapRadius, int numThreads )
+    {
+        assert numDirections > 0 && horizon > 0 && numThreads > 0 : "Invalid planner configuration";
+
+        // Candidates: every direction at every speed, plus standing still
+        m_numCandidates = numDirections * SPEEDS.length + 1;
+        m_candidateX = new float[ m_numCandidates ];
+        m_candidateY = new float[ m_numCandidates ];
+        for( int s = 0; s < SPEEDS.length; ++s )
+        {
+            for( int d = 0; d < numDirections; ++d )
+            {
+                double angle = 2.0 * Math.PI * d / numDirections;
+                m_candidateX[ s * numDirections + d ] = (float)Math.cos( angle ) * SPEEDS[ s ];
+                m_candidateY[ s * numDirections + d ] = (float)Math.sin( angle ) * SPEEDS[ s ];
+            }
+        }
+
+        m_horizon       = horizon;
+        m_playerStep    = playerStep;
+        m_noisePerSpeed = noisePerSpeed;
+        m_targetRadius  = targetRadius;
+        m_mapRadius     = mapRadius;
+
+        m_scores   = new float[ m_numCandidates ];
+        m_rollouts = new int[ m_numCandidates ];
+
+        m_inputs = new RolloutInput[ numThreads + 1 ];
+        for( int i = 0; i < m_inputs.length; ++i )
+            m_inputs[ i ] = new RolloutInput();
+        m_input = m_inputs[ 0 ];
+
+        // The calling thread is a worker, too
+        m_numWorkers = numThreads;
+        m_inline = new RolloutWorker( this, 0, m_numWorkers, m_numCandidates );
+        m_threads = new RolloutWorker[ numThreads - 1 ];
+        for( int w = 1; w < numThreads; ++w )
+        {
+            m_threads[ w - 1 ] = new RolloutWorker( this, w, m_numWorkers, m_numCandidates );
+            m_threads[ w - 1 ].start();
+        }
+    }
+
+    /**
+     * Copy the zombies relevant for the next evaluation. Has to be called
+     * before evaluate(); the velocity is the difference between the
+     * predicted and the current position.
+     *
+     * The game does not tell how close a zombie has to come to catch us.
+     * The rollouts move everybody in whole ticks, so a zombie which gets
+     * closer than the distance it and we move in one tick could have
+     * touched us in between; this distance is used as catch radius.
+     *
+     * @param x Current x coordinates of all zombies
+     * @param y Current y coordinates of all zombies
+     * @param nextX Predicted x coordinates of all zombies
+     * @param nextY Predicted y coordinates of all zombies
+     * @param indices Indices of the zombies to simulate
+     * @param numIndices Number of valid indices
+     * @param maxZombieStep Maximum distance a zombie moves per tick
+     */
+    public void setZombies( float[] x, float[] y, float[] nextX, float[] nextY,
+                            int[] indices, int numIndices, float maxZombieStep )
+    {
+        RolloutInput input = freeInput();
+        input.ensureCapacity( numIndices );
+
+        for( int j = 0; j < numIndices; ++j )
+        {
+            int i = indices[ j ];
+            input.m_zombieX[ j ]  = x[ i ];
+            input.m_zombieY[ j ]  = y[ i ];
+            input.m_zombieVX[ j ] = nextX[ i ] - x[ i ];
+            input.m_zombieVY[ j ] = nextY[ i ] - y[ i ];
+        }
+        input.m_numZombies = numIndices;
+        input.m_catchRadius = m_playerStep + maxZombieStep;
+
+        m_input = input;
+    }
+
+    /**
+     * Get the distance in which zombies can matter for a rollout. Zombies
+     * further away can be left out in setZombies().
+     *
+     * @param maxZombieStep Maximum distance a zombie moves per tick
+     * @return Relevant distance around the player
+     */
+    public float getRelevantRange( float maxZombieStep )
+    {
+        // One tick more than simulated for the catch radius
+        return ( m_horizon + 1 ) * ( m_playerStep + maxZombieStep ) + m_noisePerSpeed;
+    }
+
+    /**
+     * Evaluate all candidates until the deadline and return the best one.
+     *
+     * @param playerX x coordinate of our player
+     * @param playerY y coordinate of our player
+     * @param targetX x coordinate of the target
+     * @param targetY y coordinate of the target
+     * @param hasTarget false, if there is no target (progress is not scored)
+     * @param maxSpeed Speed limit of the candidates (relative to the maximum speed)
+     * @param deadline Value of System.nanoTime() at which the search has to stop
+     *
+     * @return Index of the best candidate or -1 if no rollout finished in time
+     * @see getCandidateX()
+     */
+    public int evaluate( float playerX, float playerY, float targetX, float targetY,
+                         boolean hasTarget, float maxSpeed, long deadline )
+    {
+        assert maxSpeed >= 0 && maxSpeed <= 1 : "Invalid speed limit: " + maxSpeed;
+
+        // The input of the last setZombies() call is free, but maybe
+        // evaluated a second time -> copy it if a worker still reads it
+        RolloutInput input = m_input;
+        if( isInUse( input ) )
+        {
+            RolloutInput free = freeInput();
+            free.ensureCapacity( input.m_numZombies );
+            System.arraycopy( input.m_zombieX, 0, free.m_zombieX, 0, input.m_numZombies );
+            System.arraycopy( input.m_zombieY, 0, free.m_zombieY, 0, input.m_numZombies );
+            System.arraycopy( input.m_zombieVX, 0, free.m_zombieVX, 0, input.m_numZombies );
+            System.arraycopy( input.m_zombieVY, 0, free.m_zombieVY, 0, input.m_numZombies );
+            free.m_numZombies = input.m_numZombies;
+            free.m_catchRadius = input.m_catchRadius;
+            m_input = input = free;
+        }
+
+        input.m_playerX   = playerX;
+        input.m_playerY   = playerY;
+        input.m_targetX   = targetX;
+        input.m_targetY   = targetY;
+        input.m_hasTarget = hasTarget;
+        input.m_maxSpeed  = maxSpeed;
+        input.m_deadline  = deadline;
+        m_maxSpeed = maxSpeed;
+        ++m_evaluation;
+
+        // Start the idle workers (a worker still busy from the last tick
+        // is skipped, it finishes soon as it checks its own deadline)
+        for( int w = 0; w < m_threads.length; ++w )
+        {
+            if( m_threads[ w ].isIdle() )
+                m_threads[ w ].request( m_evaluation, input );
+        }
+
+        m_inline.work( input );
+
+        for( int c = 0; c < m_numCandidates; ++c )
+        {
+            m_scores[ c ] = 0;
+            m_rollouts[ c ] = 0;
+        }
+        m_inline.collect( m_scores, m_rollouts );
+
+        // Wait for the other workers, but not much longer than the deadline.
+        // A worker unparks us when it is done; waking up for another reason
+        // (a late worker of the last tick) only means checking again.
+        for( int w = 0; w < m_threads.length; ++w )
+        {
+            while( !m_threads[ w ].isIdle() )
+            {
+                long left = deadline + GRACE_NANOS - System.nanoTime();
+                if( left <= 0 )
+                    break;
+                LockSupport.parkNanos( this, left );
+            }
+
+            if( m_threads[ w ].getFinished() == m_evaluation )
+                m_threads[ w ].collect( m_scores, m_rollouts );
+        }
+
+        // Best average score wins
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for( int c = 0; c < m_numCandidates; ++c )
+        {
+            if( m_rollouts[ c ] == 0 )
+                continue;
+
+            float score = m_scores[ c ] / m_rollouts[ c ];
+            if( score > bestScore )
+            {
+                bestScore = score;
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Get the number of rollouts of the last evaluation
+     * @return Number of rollouts over all candidates
+     */
+    public int getNumRollouts()
+    {
+        int sum = 0;
+        for( int c = 0; c < m_numCandidates; ++c )
+            sum += m_rollouts[ c ];
+        return sum;
+    }
+
+    /**
+     * Get the x component of a candidate movement of the last evaluation
+     * (direction times speed, within the speed limit)
+     * @param candidate Index of the candidate
+     * @return x component of the movement
+     */
+    public float getCandidateX( int candidate )
+    {
+        return m_candidateX[ candidate ] * m_maxSpeed;
+    }
+
+    /**
+     * Get the y component of a candidate movement of the last evaluation
+     * (direction times speed, within the speed limit)
+     * @param candidate Index of the candidate
+     * @return y component of the movement
+     */
+    public float getCandidateY( int candidate )
+    {
+        return m_candidateY[ candidate ] * m_maxSpeed;
+    }
+
+    /**
+     * Get the number of candidate movements
+     * @return Number of candidates
+     */
+    public int getNumCandidates()
+    {
+        return m_numCandidates;
+    }
+
+    /**
+     * Stop all worker threads. The planner cannot be used afterwards.
+     */
+    public void shutdown()
+    {
+        for( int w = 0; w < m_threads.length; ++w )
+            m_threads[ w ].interrupt();
+    }
+
+    /**
+     * Get an input buffer no busy worker reads.
+     */
+    private RolloutInput freeInput()
+    {
+        for( int i = 0; i < m_inputs.length; ++i )
+        {
+            if( m_inputs[ i ] != m_input && !isInUse( m_inputs[ i ] ) )
+                return m_inputs[ i ];
+        }
+
+        assert false : "No free rollout input";
+        return m_input;
+    }
+
+    /**
+     * Check if a worker thread still evaluates the given input.
+     */
+    private boolean isInUse( RolloutInput input )
+    {
+        for( int w = 0; w < m_threads.length; ++w )
+        {
+            if( !m_threads[ w ].isIdle() && m_threads[ w ].getInput() == input )
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Simulate one rollout for a candidate movement. Called by the workers
+     * with their own buffers and random state.
+     *
+     * @param candidate Index of the candidate movement
+     * @param input Input of the evaluation the worker is working on
+     * @param worker Worker providing buffers and random numbers
+     *
+     * @return Score of the rollout (higher is better)
+     */
+    float rollout( int candidate, RolloutInput input, RolloutWorker worker )
+    {
+        int n = input.m_numZombies;
+        worker.ensureCapacity( n );
+        float[] zx = worker.m_x, zy = worker.m_y, vx = worker.m_vx, vy = worker.m_vy, sp = worker.m_speed;
+        float[] zombieVX = input.m_zombieVX, zombieVY = input.m_zombieVY;
+
+        // Copy the start state and jitter the zombie movements
+        for( int i = 0; i < n; ++i )
+        {
+            zx[ i ] = input.m_zombieX[ i ];
+            zy[ i ] = input.m_zombieY[ i ];
+            float speed = (float)Math.sqrt( zombieVX[ i ] * zombieVX[ i ] + zombieVY[ i ] * zombieVY[ i ] );
+            vx[ i ] = zombieVX[ i ] + ( worker.nextFloat() - 0.5f ) * JITTER * speed;
+            vy[ i ] = zombieVY[ i ] + ( worker.nextFloat() - 0.5f ) * JITTER * speed;
+            sp[ i ] = speed;
+        }
+
+        float cx = m_candidateX[ candidate ] * input.m_maxSpeed;
+        float cy = m_candidateY[ candidate ] * input.m_maxSpeed;
+        float mx = cx * m_playerStep;
+        float my = cy * m_playerStep;
+        float noise = (float)Math.sqrt( cx * cx + cy * cy ) * m_noisePerSpeed;
+        float noiseSq = noise * noise;
+        float catchSq = input.m_catchRadius * input.m_catchRadius;
+
+        float px = input.m_playerX, py = input.m_playerY;
+        float targetX = input.m_targetX, targetY = input.m_targetY;
+        float startDistance = distance( px, py, targetX, targetY );
+        float score = 0;
+        int hearing = 0;
+
+        for( int t = 1; t <= m_horizon; ++t )
+        {
+            // Move our player, but stay on the map
+            px += mx;
+            py += my;
+            float r = (float)Math.sqrt( px * px + py * py );
+            if( r > m_mapRadius )
+            {
+                px *= m_mapRadius / r;
+                py *= m_mapRadius / r;
+                score -= BORDER_PENALTY;
+            }
+
+            for( int i = 0; i < n; ++i )
+            {
+                float dx = px - zx[ i ];
+                float dy = py - zy[ i ];
+                float dSq = dx * dx + dy * dy;
+
+                if( dSq <= noiseSq && dSq > 0 )
+                {
+                    // Zombie hears us -> it comes straight at us
+                    float f = sp[ i ] / (float)Math.sqrt( dSq );
+                    zx[ i ] += dx * f;
+                    zy[ i ] += dy * f;
+                    ++hearing;
+                }
+                else
+                {
+                    zx[ i ] += vx[ i ];
+                    zy[ i ] += vy[ i ];
+                }
+
+                dx = px - zx[ i ];
+                dy = py - zy[ i ];
+                if( dx * dx + dy * dy < catchSq )
+                {
+                    // Caught: the earlier, the worse
+                    return score - CATCH_PENALTY * ( m_horizon - t + 1 ) / m_horizon;
+                }
+            }
+
+            if( input.m_hasTarget && distance( px, py, targetX, targetY ) < m_targetRadius )
+            {
+                score += TARGET_BONUS * ( m_horizon - t + 1 ) / m_horizon;
+                break;
+            }
+        }
+
+        if( input.m_hasTarget )
+            score += PROGRESS_WEIGHT * ( startDistance - distance( px, py, targetX, targetY ) );
+
+        return score - DANGER_WEIGHT * hearing / (float)m_horizon;
+    }
+
+    /**
+     * Euclidean distance of two points
+     */
+    private static float distance( float x0, float y0, float x1, float y1 )
+    {
+        float dx = x1 - x0, dy = y1 - y0;
+        return (float)Math.sqrt( dx * dx + dy * dy );
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Worker of the rollout planner
+ *
+ * Every worker evaluates a fixed subset of the candidates (every n-th one)
+ * with its own simulation buffers and random numbers, so the workers never
+ * share mutable state. Workers on own threads sleep until the planner
+ * requests a new evaluation; one worker runs on the calling thread.
+ * @see RolloutPlanner
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class RolloutWorker extends Thread
+{
+    //! Planner this worker belongs to
+    private final RolloutPlanner m_planner;
+    //! First candidate of this worker
+    private final int m_first;
+    //! Distance between the candidates of this worker
+    private final int m_stride;
+
+    //! Accumulated scores and rollout counts of the own candidates
+    private final float[] m_scores;
+    private final int[] m_rollouts;
+
+    //! Simulation buffers (positions, movements and speeds of the zombies)
+    float[] m_x = new float[ 0 ];
+    float[] m_y = new float[ 0 ];
+    float[] m_vx = new float[ 0 ];
+    float[] m_vy = new float[ 0 ];
+    float[] m_speed = new float[ 0 ];
+
+    //! State of the random number generator (xorshift)
+    private int m_random;
+
+    //! Input of the last requested evaluation and the thread waiting for
+    //! its results (both written before m_requested)
+    private RolloutInput m_input = null;
+    private Thread m_caller = null;
+
+    //! Number of the last requested and of the last finished evaluation
+    private volatile int m_requested = 0;
+    private volatile int m_finished = 0;
+
+    /**
+     * Create a new worker
+     *
+     * @param planner Planner the worker belongs to
+     * @param first First candidate of this worker
+     * @param stride Distance between the candidates of this worker
+     * @param numCandidates Total number of candidates
+     */
+    public RolloutWorker( RolloutPlanner planner, int first, int stride, int numCandidates )
+    {
+        super( "RolloutWorker-" + first );
+        setDaemon( true );
+
+        m_planner  = planner;
+        m_first    = first;
+        m_stride   = stride;
+        m_scores   = new float[ numCandidates ];
+        m_rollouts = new int[ numCandidates ];
+        m_random   = 0x9E3779B9 * ( first + 1 );
+    }
+
+    /**
+     * Thread main loop: wait for requests, evaluate and wake up the thread
+     * waiting for the results. A failed evaluation only loses its results
+     * (they are reset), the worker keeps running.
+     */
+    @Override
+    public void run()
+    {
+        while( !isInterrupted() )
+        {
+            int requested = m_requested;
+            if( requested == m_finished )
+            {
+                LockSupport.park( this );
+                continue;
+            }
+
+            try
+            {
+                work( m_input );
+            }
+            catch( RuntimeException e )
+            {
+                reset();
+            }
+            m_finished = requested;
+            LockSupport.unpark( m_caller );
+        }
+    }
+
+    /**
+     * Request a new evaluation (called by the planner). The calling thread
+     * is unparked when the evaluation is finished.
+     *
+     * @param evaluation Number of the evaluation
+     * @param input Input of the evaluation (not changed until the worker is idle)
+     */
+    void request( int evaluation, RolloutInput input )
+    {
+        m_input = input;
+        m_caller = Thread.currentThread();
+        m_requested = evaluation;
+        LockSupport.unpark( this );
+    }
+
+    /**
+     * Check if the worker finished the last requested evaluation
+     * @return true, if the worker is not working
+     */
+    boolean isIdle()
+    {
+        return m_requested == m_finished;
+    }
+
+    /**
+     * Get the input of the last requested evaluation
+     * @return Input the worker reads while it is busy
+     */
+    RolloutInput getInput()
+    {
+        return m_input;
+    }
+
+    /**
+     * Get the number of the last finished evaluation
+     * @return Number of the evaluation
+     */
+    int getFinished()
+    {
+        return m_finished;
+    }
+
+    /**
+     * Do rollouts for the own candidates until the deadline.
+     *
+     * @param input Input of the evaluation
+     */
+    void work( RolloutInput input )
+    {
+        reset();
+
+        long deadline = input.m_deadline;
+        while( true )
+        {
+            for( int c = m_first; c < m_scores.length; c += m_stride )
+            {
+                if( System.nanoTime() >= deadline )
+                    return;
+
+                m_scores[ c ] += m_planner.rollout( c, input, this );
+                ++m_rollouts[ c ];
+            }
+        }
+    }
+
+    /**
+     * Forget the results of the own candidates.
+     */
+    private void reset()
+    {
+        for( int c = m_first; c < m_scores.length; c += m_stride )
+        {
+            m_scores[ c ] = 0;
+            m_rollouts[ c ] = 0;
+        }
+    }
+
+    /**
+     * Add the results of the own candidates to the given arrays.
+     *
+     * @param scores Accumulated scores per candidate
+     * @param rollouts Number of rollouts per candidate
+     */
+    void collect( float[] scores, int[] rollouts )
+    {
+        for( int c = m_first; c < m_scores.length; c += m_stride )
+        {
+            scores[ c ] += m_scores[ c ];
+            rollouts[ c ] += m_rollouts[ c ];
+        }
+    }
+
+    /**
+     * Make sure the simulation buffers can hold the given number of zombies.
+     *
+     * @param n Number of zombies
+     */
+    void ensureCapacity( int n )
+    {
+        if( m_x.length >= n )
+            return;
+
+        int capacity = Math.max( n, m_x.length * 2 );
+        m_x     = new float[ capacity ];
+        m_y     = new float[ capacity ];
+        m_vx    = new float[ capacity ];
+        m_vy    = new float[ capacity ];
+        m_speed = new float[ capacity ];
+    }
+
+    /**
+     * Get a random number in [0, 1).
+     * @return Random number
+     */
+    float nextFloat()
+    {
+        // xorshift32
+        m_random ^= m_random << 13;
+        m_random ^= m_random >>> 17;
+        m_random ^= m_random << 5;
+
+        return ( m_random >>> 8 ) * ( 1.0f / ( 1 << 24 ) );
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.HashMap;
+
+/**
+ * Tour over the flags we can still capture
+ *
+ * Flag positions do not change during a game, so the expensive part is
+ * done once when the game starts:
+ *    - flags close to each other (same cell of a coarse grid) are grouped
+ *      to clusters
+ *    - a tour visits the clusters in nearest neighbor order and the flags
+ *      of every cluster in nearest neighbor order
+ *    - the tour is improved by 2-opt moves (within a window of the tour)
+ *
+ * During the game only the flags which are currently capturable are part
+ * of the tour: they are kept in a doubly linked list in tour order, so a
+ * flag is removed (we captured it) or reinserted (somebody else owns it
+ * or it was freed) in O(1) (plus the distance to the next flag in the
+ * list on insertion). A cursor points to the current target, so choosing
+ * the next flag is a simple check every tick.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class RoutePlanner
+{
+    //! Number of following tour positions every 2-opt move is checked against
+    static final int TWO_OPT_WINDOW = 48;
+    //! Maximum number of 2-opt passes over the tour
+    static final int TWO_OPT_PASSES = 8;
+
+    //! Number of flags
+    private final int m_numFlags;
+    //! Flag at every tour position
+    private final int[] m_tour;
+    //! Tour position of every flag
+    private final int[] m_position;
+
+    //! Linked list of the capturable flags (tour positions, only valid if present)
+    private final int[] m_next;
+    private final int[] m_prev;
+    private final boolean[] m_present;
+    //! Number of flags in the list
+    private int m_size;
+    //! Tour position of the current target (-1 if the list is empty)
+    private int m_cursor = -1;
+    //! Has the cursor been placed near the player?
+    private boolean m_started = false;
+
+    /**
+     * Build the tour for the flags of a game. All flags are capturable
+     * at the beginning.
+     *
+     * @param flagX x coordinates of the flags
+     * @param flagY y coordinates of the flags
+     * @param numFlags Number of flags
+     * @param clusterSize Edge length of the grid cells flags are clustered by
+     */
+    public RoutePlanner( float[] flagX, float[] flagY, int numFlags, float clusterSize )
+    {
+        assert numFlags >= 0 : "Number of flags cannot be negative";
+
+        m_numFlags = numFlags;
+        int[] clusterOf = new int[ numFlags ];
+        int numClusters = cluster( flagX, flagY, numFlags, clusterSize, clusterOf );
+
+        m_tour = buildTour( flagX, flagY, numFlags, clusterOf, numClusters );
+        improve( flagX, flagY, m_tour );
+
+        m_position = new int[ numFlags ];
+        for( int p = 0; p < numFlags; ++p )
+            m_position[ m_tour[ p ] ] = p;
+
+        // Everything is capturable at the start
+        m_next    = new int[ numFlags ];
+        m_prev    = new int[ numFlags ];
+        m_present = new boolean[ numFlags ];
+        for( int p = 0; p < numFlags; ++p )
+        {
+            m_next[ p ] = p + 1 == numFlags ? 0 : p + 1;
+            m_prev[ p ] = p == 0 ? numFlags - 1 : p - 1;
+            m_present[ p ] = true;
+        }
+        m_size   = numFlags;
+        m_cursor = numFlags > 0 ? 0 : -1;
+    }
+
+    /**
+     * Place the cursor at the capturable flag nearest to the player. Only
+     * done once, afterwards the cursor follows the tour.
+     *
+     * @param flagX x coordinates of the flags
+     * @param flagY y coordinates of the flags
+     * @param x x coordinate of the player
+     * @param y y coordinate of the player
+     */
+    public void start( float[] flagX, float[] flagY, float x, float y )
+    {
+        if( m_started )
+            return;
+        m_started = true;
+
+        float min = Float.MAX_VALUE;
+        for( int p = 0; p < m_numFlags; ++p )
+        {
+            if( !m_present[ p ] )
+                continue;
+
+            int f = m_tour[ p ];
+            float dx = flagX[ f ] - x, dy = flagY[ f ] - y;
+            if( dx * dx + dy * dy < min )
+            {
+                min = dx * dx + dy * dy;
+                m_cursor = p;
+            }
+        }
+    }
+
+    /**
+     * Get the flag the route currently leads to
+     * @return Index of the target flag or -1 if no flag is capturable
+     */
+    public int getTarget()
+    {
+        return m_cursor < 0 ? -1 : m_tour[ m_cursor ];
+    }
+
+    /**
+     * Skip the current target (e.g. because it was too dangerous for too long)
+     */
+    public void advance()
+    {
+        if( m_cursor >= 0 )
+            m_cursor = m_next[ m_cursor ];
+    }
+
+    /**
+     * Remove a flag from the route (it is ours now)
+     *
+     * @param flag Index of the flag
+     */
+    public void remove( int flag )
+    {
+        int p = m_position[ flag ];
+        if( !m_present[ p ] )
+            return;
+
+        m_present[ p ] = false;
+        --m_size;
+
+        if( m_size == 0 )
+        {
+            m_cursor = -1;
+            return;
+        }
+
+        m_next[ m_prev[ p ] ] = m_next[ p ];
+        m_prev[ m_next[ p ] ] = m_prev[ p ];
+
+        // Next flag on the tour becomes the target
+        if( m_cursor == p )
+            m_cursor = m_next[ p ];
+    }
+
+    /**
+     * Insert a flag into the route again (it can be captured again)
+     *
+     * @param flag Index of the flag
+     */
+    public void insert( int flag )
+    {
+        int p = m_position[ flag ];
+        if( m_present[ p ] )
+            return;
+
+        m_present[ p ] = true;
+
+        if( m_size++ == 0 )
+        {
+            m_next[ p ] = p;
+            m_prev[ p ] = p;
+            m_cursor = p;
+            return;
+        }
+
+        // Find the following flag on the tour which is still in the list
+        int q = p + 1 == m_numFlags ? 0 : p + 1;
+        while( !m_present[ q ] )
+            q = q + 1 == m_numFlags ? 0 : q + 1;
+
+        m_next[ p ] = q;
+        m_prev[ p ] = m_prev[ q ];
+        m_next[ m_prev[ q ] ] = p;
+        m_prev[ q ] = p;
+    }
+
+    /**
+     * Check if a flag is part of the route
+     *
+     * @param flag Index of the flag
+     * @return true, if the flag is capturable according to the route
+     */
+    public boolean contains( int flag )
+    {
+        return m_present[ m_position[ flag ] ];
+    }
+
+    /**
+     * Get the number of capturable flags on the route
+     * @return Number of flags in the route
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Group flags by the cell of a square grid they lie in. Unlike grouping
+     * by distance this cannot chain all flags of a dense map into a single
+     * cluster, so the nearest neighbor tours stay cheap.
+     *
+     * @return Number of clusters
+     */
+    private static int cluster( float[] x, float[] y, int n, float size, int[] clusterOf )
+    {
+        HashMap<Long, Integer> cells = new HashMap<Long, Integer>();
+
+        for( int i = 0; i < n; ++i )
+        {
+            long cx = (long)Math.floor( x[ i ] / size );
+            long cy = (long)Math.floor( y[ i ] / size );
+            Long key = ( cx << 32 ) ^ ( cy & 0xffffffffL );
+
+            Integer id = cells.get( key );
+            if( id == null )
+            {
+                id = cells.size();
+                cells.put( key, id );
+            }
+            clusterOf[ i ] = id;
+        }
+
+        return cells.size();
+    }
+
+    /**
+     * Nearest neighbor tour: clusters in nearest neighbor order of their
+     * centers, flags of a cluster in nearest neighbor order.
+     *
+     * @return Flag at every tour position
+     */
+    private static int[] buildTour( float[] x, float[] y, int n, int[] clusterOf, int numClusters )
+    {
+        // Members of every cluster (CSR layout) and cluster centers
+        int[] start = new int[ numClusters + 1 ];
+        float[] cx = new float[ numClusters ], cy = new float[ numClusters ];
+        for( int i = 0; i < n; ++i )
+        {
+            ++start[ clusterOf[ i ] + 1 ];
+            cx[ clusterOf[ i ] ] += x[ i ];
+            cy[ clusterOf[ i ] ] += y[ i ];
+        }
+        for( int c = 0; c < numClusters; ++c )
+        {
+            start[ c + 1 ] += start[ c ];
+            int size = start[ c + 1 ] - start[ c ];
+            cx[ c ] /= size;
+            cy[ c ] /= size;
+        }
+        int[] members = new int[ n ];
+        int[] fill = new int[ numClusters ];
+        for( int i = 0; i < n; ++i )
+            members[ start[ clusterOf[ i ] ] + fill[ clusterOf[ i ] ]++ ] = i;
+
+        int[] tour = new int[ n ];
+        boolean[] clusterDone = new boolean[ numClusters ];
+        boolean[] flagDone = new boolean[ n ];
+        int length = 0;
+
+        // Start at the center of the map
+        float px = 0, py = 0;
+        for( int step = 0; step < numClusters; ++step )
+        {
+            int best = -1;
+            float min = Float.MAX_VALUE;
+            for( int c = 0; c < numClusters; ++c )
+            {
+                float dx = cx[ c ] - px, dy = cy[ c ] - py;
+                if( !clusterDone[ c ] && dx * dx + dy * dy < min )
+                {
+                    min = dx * dx + dy * dy;
+                    best = c;
+                }
+            }
+            clusterDone[ best ] = true;
+
+            // Visit the flags of the cluster
+            for( int k = start[ best ]; k < start[ best + 1 ]; ++k )
+            {
+                int next = -1;
+                min = Float.MAX_VALUE;
+                for( int m = start[ best ]; m < start[ best + 1 ]; ++m )
+                {
+                    int f = members[ m ];
+                    float dx = x[ f ] - px, dy = y[ f ] - py;
+                    if( !flagDone[ f ] && dx * dx + dy * dy < min )
+                    {
+                        min = dx * dx + dy * dy;
+                        next = f;
+                    }
+                }
+                flagDone[ next ] = true;
+                tour[ length++ ] = next;
+                px = x[ next ];
+                py = y[ next ];
+            }
+        }
+
+        return tour;
+    }
+
+    /**
+     * Improve a (closed) tour by 2-opt moves. Only segments of at most
+     * TWO_OPT_WINDOW positions are reversed, which keeps the cost linear
+     * in the number of flags.
+     */
+    private static void improve( float[] x, float[] y, int[] tour )
+    {
+        int n = tour.length;
+        if( n < 4 )
+            return;
+
+        for( int pass = 0; pass < TWO_OPT_PASSES; ++pass )
+        {
+            boolean improved = false;
+
+            for( int i = 0; i < n - 1; ++i )
+            {
+                int a = tour[ i ], b = tour[ i + 1 ];
+                int last = Math.min( n - 1, i + TWO_OPT_WINDOW );
+
+                for( int j = i + 2; j <= last; ++j )
+                {
+                    int c = tour[ j ], d = tour[ j + 1 == n ? 0 : j + 1 ];
+                    if( d == a )
+                        continue;
+
+                    float delta = dist( x, y, a, c ) + dist( x, y, b, d )
+                                - dist( x, y, a, b ) - dist( x, y, c, d );
+                    if( delta < -1e-3f )
+                    {
+                        // Reverse tour[ i + 1 .. j ]
+                        for( int l = i + 1, r = j; l < r; ++l, --r )
+                        {
+                            int t = tour[ l ];
+                            tour[ l ] = tour[ r ];
+                            tour[ r ] = t;
+                        }
+                        b = tour[ i + 1 ];
+                        improved = true;
+                    }
+                }
+            }
+
+            if( !improved )
+                break;
+        }
+    }
+
+    /**
+     * Distance between two flags
+     */
+    private static float dist( float[] x, float[] y, int a, int b )
+    {
+        float dx = x[ a ] - x[ b ], dy = y[ a ] - y[ b ];
+        return (float)Math.sqrt( dx * dx + dy * dy );
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+import core.ai.AiMapInfo;
+
+/**
+ * Shares the world snapshot between several of our bots in one JVM
+ *
+ * If more than one instance of our bots plays in the same match, every
+ * instance would build the same snapshot from the same map every tick.
+ * Instead, the first bot thinking in a tick builds the snapshot and
+ * publishes it; the other bots just pick it up. Publication is lock-free
+ * (compare-and-set on an atomic reference), and as snapshots are immutable
+ * no further synchronization is needed.
+ *
+ * A published snapshot is only reused for the same tick and only if it was
+ * created from the same map object or the fingerprint matches, so
+ * bots of different matches never use a foreign world.
+ * @see WorldSnapshot
+ *
+ * Bots may also ask for a speculation of the next tick after they
+ * decided. The snapshot of the next tick then reuses what the guess got
+ * right (see WorldSnapshot.create()).
+ * @see WorldSpeculator
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class SharedWorld
+{
+    //! Latest published snapshot
+    private static final AtomicReference<WorldSnapshot> s_current =
+            new AtomicReference<WorldSnapshot>();
+
+    //! Thread guessing the next tick (null until a bot asks for it)
+    private static volatile WorldSpeculator s_speculator = null;
+
+    /**
+     * Get the snapshot for the given map and tick. Reuses the published
+     * snapshot if it describes the same world, otherwise a new snapshot is
+     * created and published.
+     *
+     * @param map Current game situation
+     * @param tick Number of the current tick (counted since game start)
+     *
+     * @return Snapshot of the current world
+     */
+    public static WorldSnapshot acquire( AiMapInfo map, int tick )
+    {
+        WorldSnapshot current = s_current.get();
+
+        // Another bot already built this tick's world? The tick is checked
+        // first, as only then the map has to be looked at
+        if( current != null && current.getTick() == tick )
+        {
+            // Same map object -> same world, nothing has to be copied
+            if( current.isCreatedFrom( map ) )
+                return current;
+
+            // Otherwise compare a sample of the zombies (and the owners)
+            if( current.getFingerprint() == WorldSnapshot.fingerprint( map.getZombies(), map.getFlags() ) )
+                return current;
+        }
+
+        WorldSnapshot fresh = WorldSnapshot.fromMap( map, tick, getSpeculation( tick ) );
+
+        // Publish, unless someone else was faster
+        if( s_current.compareAndSet( current, fresh ) )
+            return fresh;
+
+        // Lost the race -> prefer the winner's snapshot if it is the same world
+        WorldSnapshot winner = s_current.get();
+        if( winner != null && winner.getTick() == tick &&
+                winner.getFingerprint() == fresh.getFingerprint() )
+            return winner;
+
+        return fresh;
+    }
+
+    /**
+     * Get the finished guess of a tick
+     *
+     * @param tick Number of the tick
+     * @return Guessed snapshot or null if there is none
+     */
+    static WorldSnapshot getSpeculation( int tick )
+    {
+        WorldSpeculator speculator = s_speculator;
+        return speculator == null ? null : speculator.getResult( tick );
+    }
+
+    /**
+     * Guess the next tick in the background. Does nothing if this tick
+     * has already been requested or the last guess is not finished yet.
+     *
+     * @param world Snapshot of the current tick
+     * @param flagCountRange Range around the flags zombies are counted in
+     */
+    public static void speculate( WorldSnapshot world, int flagCountRange )
+    {
+        WorldSpeculator speculator;
+        synchronized( SharedWorld.class )
+        {
+            if( s_speculator == null )
+            {
+                s_speculator = new WorldSpeculator( flagCountRange );
+                s_speculator.start();
+            }
+            speculator = s_speculator;
+        }
+
+        speculator.request( world );
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Uniform grid over a set of points to speed up range queries
+ *
+ * The points are sorted into square cells (counting sort), so a range
+ * query only has to look at the cells overlapping the bounding box of
+ * the query circle instead of at all points. The grid is built once
+ * and never changed afterwards, so it can be shared between threads.
+ *
+ * Points are tested with the same squared distance check that is used
+ * by ZombiesInRangeCache, so a grid query returns exactly the same
+ * points as a linear scan over the coordinates.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class SpatialGrid
+{
+    //! Maximum number of cells per axis (limits memory for huge worlds)
+    public static final int MAX_CELLS_PER_AXIS = 256;
+
+    //! Coordinates of the points (indexed by point index)
+    private final float[] m_x;
+    private final float[] m_y;
+    //! Number of points in the grid
+    private final int m_numPoints;
+    //! Lower left corner of the grid
+    private final float m_minX;
+    private final float m_minY;
+    //! Reciprocal of the cell size
+    private final float m_invCellSize;
+    //! Number of cells per axis
+    private final int m_cellsX;
+    private final int m_cellsY;
+    //! Start offsets of the cells in m_items (size: number of cells + 1)
+    private final int[] m_cellStart;
+    //! Point indices sorted by cell
+    private final int[] m_items;
+
+    /**
+     * Build a grid over the given points. The arrays are referenced, not
+     * copied, so they must not be changed while the grid is in use.
+     *
+     * @param x x coordinates of the points
+     * @param y y coordinates of the points
+     * @param numPoints Number of valid entries in the coordinate arrays
+     * @param cellSize Preferred edge length of a cell
+     */
+    public SpatialGrid( float[] x, float[] y, int numPoints, float cellSize )
+    {
+        assert numPoints >= 0 && x.length >= numPoints && y.length >= numPoints : "Invalid point arrays";
+        assert cellSize > 0 : "Cell size has to be positive";
+
+        m_x = x;
+        m_y = y;
+        m_numPoints = numPoints;
+
+        // Bounding box of the points
+        float minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if( numPoints > 0 )
+        {
+            minX = maxX = x[ 0 ];
+            minY = maxY = y[ 0 ];
+        }
+        for( int i = 1; i < numPoints; ++i )
+        {
+            minX = Math.min( minX, x[ i ] );
+            maxX = Math.max( maxX, x[ i ] );
+            minY = Math.min( minY, y[ i ] );
+            maxY = Math.max( maxY, y[ i ] );
+        }
+
+        // Increase cell size if the world is too big for the cell limit
+        float extent = Math.max( maxX - minX, maxY - minY );
+        cellSize = Math.max( cellSize, extent / MAX_CELLS_PER_AXIS );
+
+        m_minX = minX;
+        m_minY = minY;
+        m_invCellSize = 1.0f / cellSize;
+        m_cellsX = Math.min( MAX_CELLS_PER_AXIS, (int)( ( maxX - minX ) * m_invCellSize ) + 1 );
+        m_cellsY = Math.min( MAX_CELLS_PER_AXIS, (int)( ( maxY - minY ) * m_invCellSize ) + 1 );
+
+        // Counting sort of the points into the cells
+        m_cellStart = new int[ m_cellsX * m_cellsY + 1 ];
+        m_items = new int[ numPoints ];
+
+        for( int i = 0; i < numPoints; ++i )
+            ++m_cellStart[ cellOf( x[ i ], y[ i ] ) + 1 ];
+
+        for( int c = 1; c < m_cellStart.length; ++c )
+            m_cellStart[ c ] += m_cellStart[ c - 1 ];
+
+        int[] cursor = new int[ m_cellsX * m_cellsY ];
+        System.arraycopy( m_cellStart, 0, cursor, 0, cursor.length );
+
+        for( int i = 0; i < numPoints; ++i )
+            m_items[ cursor[ cellOf( x[ i ], y[ i ] ) ]++ ] = i;
+    }
+
+    /**
+     * Get the number of points in the grid
+     *
+     * @return Number of points
+     */
+    public int getNumPoints()
+    {
+        return m_numPoints;
+    }
+
+    /**
+     * Count the points in a circle.
+     *
+     * @param x x coordinate of the center
+     * @param y y coordinate of the center
+     * @param range Radius of the circle
+     *
+     * @return Number of points in the circle
+     */
+    public int countInRange( float x, float y, float range )
+    {
+        return countAtMost( x, y, range, Integer.MAX_VALUE );
+    }
+
+    /**
+     * Count the points in a circle, but stop counting when the limit is
+     * reached. Use this if only the information "at least k points" is needed.
+     *
+     * @param x x coordinate of the center
+     * @param y y coordinate of the center
+     * @param range Radius of the circle
+     * @param limit Maximum number of points to count
+     *
+     * @return Number of points in the circle, but not more than limit
+     */
+    public int countAtMost( float x, float y, float range, int limit )
+    {
+        int count = 0;
+        float rangeSq = range * range;
+
+        // Slightly enlarged box, so rounding never skips a cell with a hit
+        float reach = range * 1.001f + 0.001f;
+        int cx0 = cellX( x - reach ), cx1 = cellX( x + reach );
+        int cy0 = cellY( y - reach ), cy1 = cellY( y + reach );
+
+        for( int cy = cy0; cy <= cy1; ++cy )
+        {
+            for( int cx = cx0; cx <= cx1; ++cx )
+            {
+                int c = cy * m_cellsX + cx;
+                for( int j = m_cellStart[ c ]; j < m_cellStart[ c + 1 ]; ++j )
+                {
+                    int i = m_items[ j ];
+                    float dx = m_x[ i ] - x;
+                    float dy = m_y[ i ] - y;
+
+                    if( dx * dx + dy * dy <= rangeSq && ++count >= limit )
+                        return count;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Collect the indices of the points in a circle. The indices are
+     * written to the given buffer, starting at the given offset.
+     *
+     * @param x x coordinate of the center
+     * @param y y coordinate of the center
+     * @param range Radius of the circle
+     * @param buffer Output buffer (has to have enough space for all points in the circle)
+     * @param offset First position in the buffer to write to
+     *
+     * @return Number of indices written
+     * @see countInRange()
+     */
+    public int collectInRange( float x, float y, float range, int[] buffer, int offset )
+    {
+        int count = 0;
+        float rangeSq = range * range;
+
+        // Slightly enlarged box, so rounding never skips a cell with a hit
+        float reach = range * 1.001f + 0.001f;
+        int cx0 = cellX( x - reach ), cx1 = cellX( x + reach );
+        int cy0 = cellY( y - reach ), cy1 = cellY( y + reach );
+
+        for( int cy = cy0; cy <= cy1; ++cy )
+        {
+            for( int cx = cx0; cx <= cx1; ++cx )
+            {
+                int c = cy * m_cellsX + cx;
+                for( int j = m_cellStart[ c ]; j < m_cellStart[ c + 1 ]; ++j )
+                {
+                    int i = m_items[ j ];
+                    float dx = m_x[ i ] - x;
+                    float dy = m_y[ i ] - y;
+
+                    if( dx * dx + dy * dy <= rangeSq )
+                        buffer[ offset + count++ ] = i;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Find the point nearest to a given position. The cells are searched
+     * in growing rings around the position until no nearer point can exist.
+     *
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     *
+     * @return Index of the nearest point or -1 if the grid is empty
+     */
+    public int nearest( float x, float y )
+    {
+        if( m_numPoints == 0 )
+            return -1;
+
+        int best = -1;
+        float bestSq = Float.MAX_VALUE;
+
+        int cx = cellX( x ), cy = cellY( y );
+        int maxRing = Math.max( m_cellsX, m_cellsY );
+
+        for( int ring = 0; ring <= maxRing; ++ring )
+        {
+            // Every point in this ring is at least (ring - 1) cells away
+            float ringDistance = ( ring - 1 ) / m_invCellSize;
+            if( best >= 0 && ring > 0 && ringDistance * ringDistance > bestSq )
+                break;
+
+            for( int gy = cy - ring; gy <= cy + ring; ++gy )
+            {
+                if( gy < 0 || gy >= m_cellsY )
+                    continue;
+
+                for( int gx = cx - ring; gx <= cx + ring; ++gx )
+                {
+                    // Only the border of the ring, the inside was already checked
+                    if( gx < 0 || gx >= m_cellsX ||
+                            ( gy != cy - ring && gy != cy + ring && gx != cx - ring && gx != cx + ring ) )
+                        continue;
+
+                    int c = gy * m_cellsX + gx;
+                    for( int j = m_cellStart[ c ]; j < m_cellStart[ c + 1 ]; ++j )
+                    {
+                        int i = m_items[ j ];
+                        float dx = m_x[ i ] - x;
+                        float dy = m_y[ i ] - y;
+                        float d  = dx * dx + dy * dy;
+
+                        // Ties are resolved by index to match a linear scan
+                        if( d < bestSq || ( d == bestSq && i < best ) )
+                        {
+                            bestSq = d;
+                            best = i;
+                        }
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Get the cell a point belongs to (points outside are clamped to the border).
+     */
+    private int cellOf( float x, float y )
+    {
+        return cellY( y ) * m_cellsX + cellX( x );
+    }
+
+    /**
+     * Get the (clamped) column of an x coordinate.
+     */
+    private int cellX( float x )
+    {
+        int c = (int)Math.floor( ( x - m_minX ) * m_invCellSize );
+        return Math.max( 0, Math.min( m_cellsX - 1, c ) );
+    }
+
+    /**
+     * Get the (clamped) row of a y coordinate.
+     */
+    private int cellY( float y )
+    {
+        int c = (int)Math.floor( ( y - m_minY ) * m_invCellSize );
+        return Math.max( 0, Math.min( m_cellsY - 1, c ) );
+    }
+}
@@ -0,0 +1,155 @@
+import core.constants.ZombieConstants;
+
+/**
+ * Chooses the fastest speed at which no zombie can hear us
+ *
+ * The noise radius of our player grows with its speed. The controller
+ * keeps a small lookup table "speed level -> safety envelope", where the
+ * envelope is the noise radius at that speed plus the distance we walk in
+ * one tick. Choosing a speed is then a lookup of the fastest level whose
+ * envelope does not reach the nearest predicted zombie position.
+ *
+ * The noise model (noise = base + slope * speed) starts with the
+ * assumption that the noise radius reaches MAX_PLAYER_VOLUME_RADIUS at
+ * full speed and is fitted to the noise radii reported by the game
+ * (getCurrentNoiseRadius() of a tick belongs to the speed of the last
+ * tick). The table is only rebuilt if the model changed noticeably.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class SpeedController
+{
+    //! Number of speed levels in the table
+    static final int NUM_LEVELS = 32;
+    //! Extra distance kept to the nearest zombie
+    static final float SAFETY_MARGIN = 1.0f;
+    //! Relative change of the model which triggers a rebuild of the table
+    static final float REBUILD_THRESHOLD = 0.01f;
+    //! Speeds below this are not used for the fit (noise of standing still is unknown)
+    static final float MIN_FIT_SPEED = 0.05f;
+
+    //! Speed of every level (ascending, last level is full speed)
+    private final float[] m_speeds = new float[ NUM_LEVELS ];
+    //! Safety envelope of every level
+    private final float[] m_envelopes = new float[ NUM_LEVELS ];
+
+    //! Current noise model
+    private float m_base = 0;
+    private float m_slope = ZombieConstants.MAX_PLAYER_VOLUME_RADIUS;
+    //! Model the table was built for
+    private float m_tableBase = Float.NaN;
+    private float m_tableSlope = Float.NaN;
+
+    //! Sums for the least squares fit of the noise model
+    private double m_n = 0, m_sumS = 0, m_sumN = 0, m_sumSS = 0, m_sumSN = 0;
+
+    /**
+     * Create a controller with the default noise model
+     */
+    public SpeedController()
+    {
+        for( int k = 0; k < NUM_LEVELS; ++k )
+            m_speeds[ k ] = ( k + 1 ) / (float)NUM_LEVELS;
+
+        rebuild();
+    }
+
+    /**
+     * Feed an observation of the game into the noise model
+     *
+     * @param speed Speed our player had in the last tick
+     * @param noiseRadius Noise radius reported for that movement
+     */
+    public void observe( float speed, float noiseRadius )
+    {
+        if( !( speed >= MIN_FIT_SPEED ) || !( noiseRadius >= 0 ) )
+            return;
+
+        m_n     += 1;
+        m_sumS  += speed;
+        m_sumN  += noiseRadius;
+        m_sumSS += speed * speed;
+        m_sumSN += speed * noiseRadius;
+
+        // Without different speeds only the ratio noise/speed is known
+        double det = m_n * m_sumSS - m_sumS * m_sumS;
+        if( det > 1e-6 * m_n * m_n )
+        {
+            m_slope = (float)( ( m_n * m_sumSN - m_sumS * m_sumN ) / det );
+            m_base  = (float)( ( m_sumN - m_slope * m_sumS ) / m_n );
+        }
+        else
+        {
+            m_slope = (float)( m_sumSN / m_sumSS );
+            m_base  = 0;
+        }
+
+        if( changed( m_base, m_tableBase ) || changed( m_slope, m_tableSlope ) )
+            rebuild();
+    }
+
+    /**
+     * Get the fastest safe speed
+     *
+     * @param nearestDistance Distance from our position to the nearest
+     *                        predicted zombie position (Float.MAX_VALUE if
+     *                        there are no zombies)
+     *
+     * @return Fastest speed whose envelope does not reach the zombie (the
+     *         slowest level if no speed is safe)
+     */
+    public float choose( float nearestDistance )
+    {
+        // Envelopes are ascending -> search the last one below the distance
+        int lo = 0, hi = NUM_LEVELS - 1;
+        if( m_envelopes[ hi ] < nearestDistance )
+            return m_speeds[ hi ];
+
+        while( lo < hi )
+        {
+            int mid = ( lo + hi + 1 ) >>> 1;
+            if( m_envelopes[ mid ] < nearestDistance )
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        return m_speeds[ lo ];
+    }
+
+    /**
+     * Get the predicted noise radius at a given speed
+     *
+     * @param speed Speed of the player
+     * @return Noise radius according to the current model
+     */
+    public float getNoiseRadius( float speed )
+    {
+        return Math.max( 0, m_base + m_slope * speed );
+    }
+
+    /**
+     * Rebuild the envelope table for the current noise model
+     */
+    private void rebuild()
+    {
+        for( int k = 0; k < NUM_LEVELS; ++k )
+            m_envelopes[ k ] = getNoiseRadius( m_speeds[ k ] )
+                    + m_speeds[ k ] * ZombieConstants.MAX_PLAYER_SPEED + SAFETY_MARGIN;
+
+        // A negative slope must not make the table unsorted
+        for( int k = 1; k < NUM_LEVELS; ++k )
+            m_envelopes[ k ] = Math.max( m_envelopes[ k ], m_envelopes[ k - 1 ] );
+
+        m_tableBase  = m_base;
+        m_tableSlope = m_slope;
+    }
+
+    /**
+     * Check if a model parameter changed enough to rebuild the table
+     */
+    private static boolean changed( float value, float tableValue )
+    {
+        return !( Math.abs( value - tableValue ) <= REBUILD_THRESHOLD * Math.max( 1.0f, Math.abs( tableValue ) ) );
+    }
+}
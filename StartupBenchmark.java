@@ -0,0 +1,448 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import core.Vector;
+
+/**
+ * Startup and first tick latency benchmark
+ *
+ * Every iteration runs in a fresh JVM, so nothing is loaded, verified or
+ * compiled yet - like a bot in a tournament. The child JVM measures
+ *    - JVM start until main() (from the JVM's start time, ms resolution)
+ *    - loading and initializing all classes of the bot
+ *    - creating the bot instance
+ *    - the work of onGameStarted() (snapshot, bot state incl. route and
+ *      planner, event worker) on a simulated world
+ *    - the first tick and the first N ticks
+ * and the parent prints the median of every phase.
+ *
+ * Every build (e.g. the multi-file build and the bundled single-file
+ * build) is measured
+ *    - without class data sharing (-Xshare:off)
+ *    - with the default CDS archive of the JDK
+ *    - with an AppCDS archive of the bot (dumped by a first run with
+ *      -XX:ArchiveClassesAtExit, needs JDK 13+)
+ *
+ * Usage: java -cp <core>:. StartupBenchmark [-n iterations] [-ticks N]
+ *                                          [-zombies N] [-flags N] name=classpath ...
+ *    e.g. StartupBenchmark multi=out/multi bundled=out/bundled
+ *    Without builds, the classes next to the benchmark are measured.
+ *
+ * @note Only the core classes and this class (in an own jar) are appended
+ *       to the classpath of every build, so a build only has to contain
+ *       the bot classes. Directories are packed into temporary jars first
+ *       (class files only), as CDS archives can only be used with jars.
+ *       The child checks that every bot class was loaded from the build.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+public class StartupBenchmark
+{
+    //! Classes of the bot (loaded explicitly to measure class loading)
+    static final String[] BOT_CLASSES = {
+        "GeneralPurpose", "MathUtils", "VectorUtils", "ActionLocker", "SpatialGrid",
+        "WorldSnapshot", "WorldSpeculator", "SharedWorld", "PathSearch", "PathPlanner", "RoutePlanner",
+        "ZombieView", "ZombiesInRangeCache", "FlagObserver", "FlagEventWorker", "OpponentModel",
+        "EscapeKernel", "SpeedController", "Movement", "BotState", "DecisionEngine", "Diagnostics"
+    };
+
+    //! Names of the measured phases (order of the child's result line)
+    static final String[] PHASES = {
+        "jvm->main", "class load", "instance", "game start", "first tick", "first N ticks", "process"
+    };
+
+    //! Marker of the child's result line
+    static final String RESULT = "STARTUP_RESULT";
+
+    //! Class data sharing modes
+    static final String[] CDS_MODES = { "off", "default", "appcds" };
+
+    public static void main( String[] args ) throws Exception
+    {
+        if( args.length > 0 && args[ 0 ].equals( "--child" ) )
+        {
+            child( Integer.parseInt( args[ 1 ] ), Integer.parseInt( args[ 2 ] ), Integer.parseInt( args[ 3 ] ),
+                   args[ 4 ] );
+            return;
+        }
+
+        int iterations = 10, ticks = 20, zombies = 1000, flags = 40;
+        List<String> builds = new ArrayList<String>();
+        for( int i = 0; i < args.length; ++i )
+        {
+            if( args[ i ].equals( "-n" ) )
+                iterations = Integer.parseInt( args[ ++i ] );
+            else if( args[ i ].equals( "-ticks" ) )
+                ticks = Integer.parseInt( args[ ++i ] );
+            else if( args[ i ].equals( "-zombies" ) )
+                zombies = Integer.parseInt( args[ ++i ] );
+            else if( args[ i ].equals( "-flags" ) )
+                flags = Integer.parseInt( args[ ++i ] );
+            else
+                builds.add( args[ i ] );
+        }
+        if( builds.isEmpty() )
+            builds.add( "default=" );
+
+        System.out.printf( "%-22s", "build / cds [ms]" );
+        for( String phase : PHASES )
+            System.out.printf( "%16s", phase.replace( "N", Integer.toString( ticks ) ) );
+        System.out.println();
+
+        String shared = sharedPath();
+        for( String build : builds )
+        {
+            int split = build.indexOf( '=' );
+            String name = build.substring( 0, split );
+            String buildPath = build.substring( split + 1 );
+            buildPath = toJars( buildPath.isEmpty() ? location( StartupBenchmark.class ).getPath() : buildPath );
+            String classPath = buildPath + File.pathSeparator + shared;
+
+            for( String cds : CDS_MODES )
+            {
+                File archive = null;
+                if( cds.equals( "appcds" ) )
+                {
+                    archive = File.createTempFile( "bot-" + name, ".jsa" );
+                    archive.delete();
+                    archive.deleteOnExit();
+
+                    // Dump run (not measured)
+                    if( run( classPath, buildPath, "-XX:ArchiveClassesAtExit=" + archive.getPath(),
+                             ticks, zombies, flags ) == null
+                            || !archive.exists() )
+                    {
+                        System.out.printf( "%-22s %s%n", name + " / " + cds, "not supported by this JVM" );
+                        continue;
+                    }
+                }
+
+                String option = cds.equals( "off" ) ? "-Xshare:off"
+                        : cds.equals( "default" ) ? "-Xshare:auto"
+                        : "-XX:SharedArchiveFile=" + archive.getPath();
+
+                double[][] samples = new double[ PHASES.length ][ iterations ];
+                int done = 0;
+                for( int it = 0; it < iterations; ++it )
+                {
+                    double[] result = run( classPath, buildPath, option, ticks, zombies, flags );
+                    if( result == null )
+                        break;
+
+                    for( int p = 0; p < PHASES.length; ++p )
+                        samples[ p ][ it ] = result[ p ];
+                    ++done;
+                }
+
+                System.out.printf( "%-22s", name + " / " + cds );
+                for( int p = 0; p < PHASES.length; ++p )
+                    System.out.printf( "%16.2f", done == 0 ? Double.NaN : median( samples[ p ], done ) );
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Run one iteration in a fresh JVM
+     *
+     * @param classPath Classpath of the child (build and shared path)
+     * @param buildPath Part of the classpath the bot classes have to come from
+     * @return Durations of the phases in ms or null if the child failed
+     */
+    private static double[] run( String classPath, String buildPath, String option, int ticks, int zombies,
+                                 int flags ) throws IOException, InterruptedException
+    {
+        String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder( java, option, "-cp", classPath, "StartupBenchmark",
+                "--child", Integer.toString( ticks ), Integer.toString( zombies ), Integer.toString( flags ),
+                buildPath );
+        builder.redirectErrorStream( true );
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+
+        double[] result = null;
+        String error = null;
+        BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( !line.startsWith( RESULT ) )
+                {
+                    if( error == null )
+                        error = line;
+                    continue;
+                }
+
+                String[] parts = line.split( " " );
+                result = new double[ PHASES.length ];
+                for( int p = 0; p + 1 < PHASES.length; ++p )
+                    result[ p ] = Double.parseDouble( parts[ p + 1 ] );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if( process.waitFor() != 0 || result == null )
+        {
+            System.err.println( "Child failed: " + error );
+            return null;
+        }
+
+        result[ PHASES.length - 1 ] = ( System.nanoTime() - start ) / 1e6;
+        return result;
+    }
+
+    /**
+     * Child JVM: measure the phases and print them in one line
+     *
+     * @param buildPath Part of the classpath the bot classes have to come from
+     */
+    private static void child( int ticks, int numZombies, int numFlags, String buildPath ) throws Exception
+    {
+        double jvmToMain = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        // Load and initialize the classes of the bot
+        long start = System.nanoTime();
+        ClassLoader loader = StartupBenchmark.class.getClassLoader();
+        Class<?>[] classes = new Class<?>[ BOT_CLASSES.length ];
+        for( int i = 0; i < BOT_CLASSES.length; ++i )
+            classes[ i ] = Class.forName( BOT_CLASSES[ i ], true, loader );
+        double classLoad = ( System.nanoTime() - start ) / 1e6;
+
+        // Otherwise we would measure some other copy of the bot
+        Set<File> build = new HashSet<File>();
+        for( String entry : buildPath.split( File.pathSeparator ) )
+            build.add( new File( entry ).getCanonicalFile() );
+        for( Class<?> type : classes )
+        {
+            File source = location( type );
+            if( source == null || !build.contains( source.getCanonicalFile() ) )
+                throw new IllegalStateException( type.getName() + " not loaded from the build but from " + source );
+        }
+
+        start = System.nanoTime();
+        GeneralPurpose bot = (GeneralPurpose)Class.forName( "GeneralPurpose", true, loader )
+                .getDeclaredConstructor().newInstance();
+        double instance = ( System.nanoTime() - start ) / 1e6;
+
+        // Simulated world (the game's map cannot be created outside the game)
+        Random random = new Random( 1 );
+        float[] fx = new float[ numFlags ], fy = new float[ numFlags ];
+        for( int i = 0; i < numFlags; ++i )
+        {
+            fx[ i ] = random.nextFloat() * 900 - 450;
+            fy[ i ] = random.nextFloat() * 900 - 450;
+        }
+        int[] owner = new int[ numFlags ];
+        Arrays.fill( owner, WorldSnapshot.NO_OWNER );
+        float[] zx = new float[ numZombies ], zy = new float[ numZombies ];
+        for( int i = 0; i < numZombies; ++i )
+        {
+            zx[ i ] = random.nextFloat() * 900 - 450;
+            zy[ i ] = random.nextFloat() * 900 - 450;
+        }
+
+        // What onGameStarted() does with the map
+        start = System.nanoTime();
+        WorldSnapshot world = world( 0, zx, zy, fx, fy, owner, random );
+        bot.m_state = bot.m_engine.createState( world, 0 );
+        bot.m_engine.startEventWorker( bot.m_state );
+        double gameStart = ( System.nanoTime() - start ) / 1e6;
+
+        // First ticks (what think() does with the map)
+        double firstTick = 0, allTicks = 0;
+        float px = 0, py = 0;
+        for( int t = 1; t <= ticks; ++t )
+        {
+            start = System.nanoTime();
+            world = world( t, zx, zy, fx, fy, owner, random );
+            bot.m_state.setPlayer( px, py, 0 );
+            Movement m = bot.m_engine.decide( world, bot.m_state );
+            double duration = ( System.nanoTime() - start ) / 1e6;
+
+            px += m.getX();
+            py += m.getY();
+            if( t == 1 )
+                firstTick = duration;
+            allTicks += duration;
+        }
+
+        bot.m_engine.stopEventWorker( bot.m_state );
+
+        System.out.println( RESULT + " " + jvmToMain + " " + classLoad + " " + instance + " "
+                + gameStart + " " + firstTick + " " + allTicks );
+    }
+
+    /**
+     * Move the zombies a bit and create the snapshot of a tick
+     */
+    private static WorldSnapshot world( int tick, float[] zx, float[] zy, float[] fx, float[] fy,
+                                        int[] owner, Random random )
+    {
+        int n = zx.length;
+        float[] x = new float[ n ], y = new float[ n ], nx = new float[ n ], ny = new float[ n ];
+        for( int i = 0; i < n; ++i )
+        {
+            x[ i ] = zx[ i ];
+            y[ i ] = zy[ i ];
+            zx[ i ] += random.nextFloat() - 0.5f;
+            zy[ i ] += random.nextFloat() - 0.5f;
+            nx[ i ] = zx[ i ];
+            ny[ i ] = zy[ i ];
+        }
+
+        return new WorldSnapshot( tick, x, y, nx, ny, n, fx, fy, owner.clone(), fx.length, tick );
+    }
+
+    /**
+     * Pack the core classes (if they are a directory) and this class into a
+     * temporary jar
+     *
+     * @return Classpath shared by all builds
+     */
+    private static String sharedPath() throws IOException, URISyntaxException
+    {
+        File jar = File.createTempFile( "bot-shared", ".jar" );
+        jar.deleteOnExit();
+
+        File core = location( Vector.class );
+        JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            out.putNextEntry( new JarEntry( "StartupBenchmark.class" ) );
+            InputStream in = StartupBenchmark.class.getResourceAsStream( "StartupBenchmark.class" );
+            try
+            {
+                byte[] buffer = new byte[ 8192 ];
+                for( int n; ( n = in.read( buffer ) ) > 0; )
+                    out.write( buffer, 0, n );
+            }
+            finally
+            {
+                in.close();
+            }
+            out.closeEntry();
+
+            if( core.isDirectory() )
+            {
+                out.putNextEntry( new JarEntry( "core/" ) );
+                out.closeEntry();
+                addToJar( out, new File( core, "core" ), "core/" );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return core.isDirectory() ? jar.getPath() : core.getPath() + File.pathSeparator + jar.getPath();
+    }
+
+    /**
+     * Get the directory or jar a class was loaded from
+     *
+     * @return Location or null if unknown
+     */
+    private static File location( Class<?> type ) throws URISyntaxException
+    {
+        CodeSource source = type.getProtectionDomain().getCodeSource();
+        return source == null ? null : new File( source.getLocation().toURI() );
+    }
+
+    /**
+     * Replace the directories of a classpath by temporary jars of them
+     */
+    private static String toJars( String classPath ) throws IOException
+    {
+        StringBuilder result = new StringBuilder();
+
+        for( String entry : classPath.split( File.pathSeparator ) )
+        {
+            File file = new File( entry );
+            if( file.isDirectory() )
+            {
+                File jar = File.createTempFile( "bot-classpath", ".jar" );
+                jar.deleteOnExit();
+
+                JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) );
+                try
+                {
+                    addToJar( out, file, "" );
+                }
+                finally
+                {
+                    out.close();
+                }
+                entry = jar.getPath();
+            }
+
+            if( result.length() > 0 )
+                result.append( File.pathSeparator );
+            result.append( entry );
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Add the class files of a directory to a jar (recursively, without
+     * hidden directories like .git)
+     */
+    private static void addToJar( JarOutputStream out, File dir, String prefix ) throws IOException
+    {
+        File[] files = dir.listFiles();
+        Arrays.sort( files );
+
+        for( File file : files )
+        {
+            if( file.getName().startsWith( "." ) )
+                continue;
+
+            if( file.isDirectory() )
+            {
+                out.putNextEntry( new JarEntry( prefix + file.getName() + "/" ) );
+                out.closeEntry();
+                addToJar( out, file, prefix + file.getName() + "/" );
+                continue;
+            }
+
+            if( !file.getName().endsWith( ".class" ) )
+                continue;
+
+            out.putNextEntry( new JarEntry( prefix + file.getName() ) );
+            out.write( Files.readAllBytes( file.toPath() ) );
+            out.closeEntry();
+        }
+    }
+
+    /**
+     * Median of the first n values
+     */
+    private static double median( double[] values, int n )
+    {
+        double[] sorted = Arrays.copyOf( values, n );
+        Arrays.sort( sorted );
+        return sorted[ n / 2 ];
+    }
+}
@@ -1,8 +1,19 @@
+import java.util.Arrays;
+import java.util.Random;
+
 import core.Vector;
+import core.constants.ZombieConstants;
 
 /**
  * Basic class to test various classes of this package
  * 
+ * Besides the basic unit tests, the optimized structures (spatial grid,
+ * zombie cache, escape kernel, action locker, flag observer, route, path
+ * planner) are checked against simple brute force implementations on
+ * random worlds, and the decisions against the logic of the original bot.
+ * The number of random cases can be scaled by the first argument
+ * (default 1, e.g. "java -ea Testing 100" for a long run).
+ * 
  * @author Oskar Kirmis <kirmis@st.ovgu.de>
  */
 public class Testing {
@@ -11,8 +22,23 @@ public class Testing {
 	 * Run the program. JavaVM has to be started using "-ea" argument to enable assertions.
 	 */
 	public static void main(String[] args) {
+		int scale = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1;
+		
 		testMathUtils();
 		testActionLocker();
+		
+		Random random = new Random( 4711 );
+		testSpatialGrid( random, 200 * scale );
+		testZombiesInRangeCache( random, 100 * scale );
+		testEscapeKernel( random, 500 * scale );
+		testActionLockerRandom( random, 200 * scale );
+		testFlagObserver( random, 50 * scale );
+		testFlagEventWorker( random, 200 * scale );
+		testSpeculation( random, 200 * scale );
+		testOpponentModel( random, 200 * scale );
+		testPathPlanner( random, 20 * scale );
+		testRoutePlanner( random, 100 * scale );
+		testDecisionEngine( random, 300 * scale );
 	}
 
 	/**
@@ -67,6 +93,944 @@ public class Testing {
 	
 	
 	
+	/**
+	 * Compare SpatialGrid queries (count, early exit count, collect, nearest)
+	 * with brute force on random point sets.
+	 */
+	public static void testSpatialGrid( Random random, int worlds )
+	{
+		long cases = 0;
+		
+		for( int w = 0; w < worlds; ++w )
+		{
+			int n = random.nextInt( 400 );
+			float[] x = new float[ n ], y = new float[ n ];
+			randomPoints( random, x, y, n );
+			
+			SpatialGrid grid = new SpatialGrid( x, y, n, 1 + random.nextInt( 30 ) );
+			int[] buffer = new int[ n + 1 ];
+			
+			for( int q = 0; q < 200; ++q, ++cases )
+			{
+				float qx = random.nextInt( 300 ) - 150, qy = random.nextInt( 300 ) - 150;
+				float range = random.nextInt( 4 ) == 0 ? random.nextFloat() * 80 : random.nextInt( 80 );
+				
+				int reference = 0;
+				for( int i = 0; i < n; ++i )
+					if( inRange( x[ i ], y[ i ], qx, qy, range ) )
+						buffer[ reference++ ] = i;
+				
+				assert grid.countInRange( qx, qy, range ) == reference : "SpatialGrid count failed.";
+				
+				int limit = random.nextInt( 10 );
+				assert grid.countAtMost( qx, qy, range, limit ) >= Math.min( limit, reference ) : "SpatialGrid early exit failed.";
+				assert grid.countAtMost( qx, qy, range, limit ) <= reference : "SpatialGrid early exit failed.";
+				
+				int[] expected = Arrays.copyOf( buffer, reference );
+				int count = grid.collectInRange( qx, qy, range, buffer, 1 );
+				int[] collected = Arrays.copyOfRange( buffer, 1, 1 + count );
+				Arrays.sort( collected );
+				assert Arrays.equals( expected, collected ) : "SpatialGrid collect failed.";
+				
+				int nearest = -1;
+				float min = Float.MAX_VALUE;
+				for( int i = 0; i < n; ++i )
+				{
+					float d = ( x[ i ] - qx ) * ( x[ i ] - qx ) + ( y[ i ] - qy ) * ( y[ i ] - qy );
+					if( d < min )
+					{
+						min = d;
+						nearest = i;
+					}
+				}
+				assert grid.nearest( qx, qy ) == nearest : "SpatialGrid nearest failed.";
+			}
+		}
+		
+		System.out.println( "SpatialGrid test passed (" + cases + " queries)." );
+	}
+	
+	/**
+	 * Compare the cached queries of ZombiesInRangeCache (count, early exit,
+	 * views, batched queries) with brute force over the predicted positions,
+	 * done the way the original cache did it (position plus movement,
+	 * Vector length compared with the range). Queries are repeated on
+	 * purpose to hit cached and bypassed paths.
+	 */
+	public static void testZombiesInRangeCache( Random random, int worlds )
+	{
+		ZombiesInRangeCache cache = new ZombiesInRangeCache();
+		ZombieView view = new ZombieView();
+		long cases = 0;
+		
+		for( int w = 0; w < worlds; ++w )
+		{
+			WorldSnapshot world = randomWorld( random, random.nextInt( 500 ), 0, w );
+			int n = world.getNumZombies();
+			float[] x = world.getZombieNextX(), y = world.getZombieNextY();
+			float[] zx = world.getZombieX(), zy = world.getZombieY();
+			cache.reset( world );
+			
+			float[] qx = new float[ 16 ], qy = new float[ 16 ];
+			int[] counts = new int[ 16 ], offsets = new int[ 17 ];
+			
+			for( int q = 0; q < 300; ++q, ++cases )
+			{
+				// Few distinct positions -> many cache hits
+				float px = random.nextInt( 20 ) * 10 - 100, py = random.nextInt( 20 ) * 10 - 100;
+				int range = random.nextInt( 60 );
+				
+				int reference = 0;
+				for( int i = 0; i < n; ++i )
+					if( inRangeOriginal( zx[ i ], zy[ i ], x[ i ] - zx[ i ], y[ i ] - zy[ i ], px, py, range ) )
+						++reference;
+				
+				int k = random.nextInt( 6 );
+				int queryClass = random.nextBoolean() ? ZombiesInRangeCache.QUERY_PLAYER : ZombiesInRangeCache.QUERY_FLAG;
+				switch( random.nextInt( 3 ) )
+				{
+				case 0:
+					assert cache.countZombiesInRange( px, py, range, queryClass ) == reference : "Cache count failed.";
+					break;
+				case 1:
+					assert cache.hasAtLeast( px, py, range, k, queryClass ) == ( reference >= k ) : "Cache hasAtLeast failed.";
+					break;
+				default:
+					cache.getZombiesInRange( px, py, range, view, queryClass );
+					assert view.size() == reference : "Cache view failed.";
+					for( int i = 1; i < view.size(); ++i )
+						assert view.getIndex( i - 1 ) < view.getIndex( i ) : "Cache view order failed.";
+					for( int i = 0; i < view.size(); ++i )
+						assert inRange( x[ view.getIndex( i ) ], y[ view.getIndex( i ) ], px, py, range ) : "Cache view failed.";
+				}
+			}
+			
+			// Batched queries
+			int numQueries = random.nextInt( 17 );
+			int range = random.nextInt( 60 );
+			for( int q = 0; q < numQueries; ++q )
+			{
+				qx[ q ] = random.nextInt( 200 ) - 100;
+				qy[ q ] = random.nextInt( 200 ) - 100;
+			}
+			cache.countZombiesInRanges( qx, qy, numQueries, range, counts );
+			int[] indices = cache.collectZombiesInRanges( qx, qy, numQueries, range, offsets );
+			for( int q = 0; q < numQueries; ++q, ++cases )
+			{
+				int reference = 0;
+				for( int i = 0; i < n; ++i )
+					if( inRangeOriginal( zx[ i ], zy[ i ], x[ i ] - zx[ i ], y[ i ] - zy[ i ], qx[ q ], qy[ q ], range ) )
+						++reference;
+				
+				assert counts[ q ] == reference : "Cache batched count failed.";
+				assert offsets[ q + 1 ] - offsets[ q ] == reference : "Cache batched collect failed.";
+				for( int j = offsets[ q ]; j < offsets[ q + 1 ]; ++j )
+					assert inRange( x[ indices[ j ] ], y[ indices[ j ] ], qx[ q ], qy[ q ], range ) : "Cache batched collect failed.";
+			}
+		}
+		
+		System.out.println( "ZombiesInRangeCache test passed (" + cases + " queries)." );
+	}
+	
+	/**
+	 * Compare the fused EscapeKernel pass with separate brute force loops.
+	 */
+	public static void testEscapeKernel( Random random, int worlds )
+	{
+		EscapeKernel kernel = new EscapeKernel();
+		
+		for( int w = 0; w < worlds; ++w )
+		{
+			WorldSnapshot world = randomWorld( random, random.nextInt( 300 ), 0, w );
+			int n = world.getNumZombies();
+			float[] x = world.getZombieX(), y = world.getZombieY();
+			float[] nx = world.getZombieNextX(), ny = world.getZombieNextY();
+			
+			float px = random.nextFloat() * 200 - 100, py = random.nextFloat() * 200 - 100;
+			float radius = 1 + random.nextFloat() * 60, nextRadius = random.nextInt( 60 );
+			float power = random.nextBoolean() ? 2.0f : 1.5f;
+			
+			kernel.evaluate( x, y, nx, ny, n, px, py, radius, power, nextRadius );
+			
+			double sumX = 0, sumY = 0;
+			int count = 0, nextCount = 0, nearest = -1;
+			float min = Float.MAX_VALUE;
+			for( int i = 0; i < n; ++i )
+			{
+				float dx = x[ i ] - px, dy = y[ i ] - py;
+				if( dx * dx + dy * dy < min )
+				{
+					min = dx * dx + dy * dy;
+					nearest = i;
+				}
+				if( inRange( x[ i ], y[ i ], px, py, radius ) )
+				{
+					double weight = -Math.pow( radius / Math.sqrt( dx * dx + dy * dy ), power );
+					sumX += dx * weight;
+					sumY += dy * weight;
+					++count;
+				}
+				if( inRange( nx[ i ], ny[ i ], px, py, nextRadius ) )
+					++nextCount;
+			}
+			
+			double scale = Math.max( 1, Math.hypot( sumX, sumY ) );
+			assert kernel.getNearest() == nearest : "EscapeKernel nearest failed.";
+			assert kernel.getCount() == count : "EscapeKernel count failed.";
+			assert kernel.getNextCount() == nextCount : "EscapeKernel predicted count failed.";
+			assert Math.abs( kernel.getSumX() - sumX ) < 1e-3 * scale : "EscapeKernel sum failed.";
+			assert Math.abs( kernel.getSumY() - sumY ) < 1e-3 * scale : "EscapeKernel sum failed.";
+		}
+		
+		System.out.println( "EscapeKernel test passed (" + worlds + " worlds)." );
+	}
+	
+	/**
+	 * Compare the ActionLocker (expiry ticks) with plain countdown counters.
+	 */
+	public static void testActionLockerRandom( Random random, int runs )
+	{
+		for( int r = 0; r < runs; ++r )
+		{
+			int numFlags = random.nextInt( 20 );
+			int numActions = ActionLocker.ACTION_OWNED_FLAGS + numFlags;
+			ActionLocker locker = new ActionLocker();
+			locker.initialize( numFlags );
+			int[] counters = new int[ numActions ];
+			
+			for( int step = 0; step < 500; ++step )
+			{
+				int action = random.nextInt( numActions );
+				
+				if( random.nextInt( 3 ) == 0 )
+				{
+					locker.tick();
+					for( int i = 0; i < numActions; ++i )
+						if( counters[ i ] > 0 )
+							--counters[ i ];
+				}
+				else if( counters[ action ] == 0 )
+				{
+					int ticks = random.nextInt( 30 );
+					locker.lock( action, ticks );
+					counters[ action ] = ticks;
+				}
+				
+				for( int i = 0; i < numActions; ++i )
+					assert locker.isLocked( i ) == ( counters[ i ] > 0 ) : "ActionLocker failed";
+			}
+		}
+		
+		System.out.println( "ActionLocker random test passed (" + runs + " runs)." );
+	}
+	
+	/**
+	 * Check the FlagObserver event records against the owner history and
+	 * the event handling through the route (our flags are removed from it,
+	 * all others are part of it).
+	 */
+	public static void testFlagObserver( Random random, int games )
+	{
+		DecisionEngine engine = new DecisionEngine( DecisionEngine.MODE_GENERAL_PURPOSE );
+		
+		for( int g = 0; g < games; ++g )
+		{
+			int numFlags = 1 + random.nextInt( 150 );
+			WorldSnapshot world = randomWorld( random, 0, numFlags, 0 );
+			BotState state = engine.createState( world, 0 );
+			state.setPlayer( 0, 0, 0 );
+			
+			int[] previous = new int[ numFlags ];
+			Arrays.fill( previous, WorldSnapshot.NO_OWNER );
+			
+			for( int tick = 1; tick < 100; ++tick )
+			{
+				world = randomWorld( random, 0, numFlags, tick, world );
+				state.m_observer.update( world, state );
+				
+				for( int i = 0; i < numFlags; ++i )
+				{
+					int owner = world.getFlagOwner( i );
+					if( owner != previous[ i ] )
+					{
+						int type = owner == WorldSnapshot.NO_OWNER ? FlagObserver.EVENT_FREED
+						         : owner == 0 ? FlagObserver.EVENT_SELF_CAPTURED : FlagObserver.EVENT_OTHER_CAPTURED;
+						assert state.m_observer.hasEvent() : "FlagObserver event missing.";
+						assert state.m_observer.peekType() == type : "FlagObserver event failed.";
+						assert state.m_observer.peekFlag() == i : "FlagObserver event failed.";
+						assert state.m_observer.peekPrevious() == previous[ i ] : "FlagObserver event failed.";
+						assert state.m_observer.peekOwner() == owner : "FlagObserver event failed.";
+						assert state.m_observer.peekTick() == tick : "FlagObserver event failed.";
+						state.m_observer.pop();
+					}
+					assert state.m_route.contains( i ) == ( owner != 0 ) : "FlagObserver events failed.";
+					
+					previous[ i ] = owner;
+				}
+				assert !state.m_observer.hasEvent() : "FlagObserver has too many events.";
+			}
+		}
+		
+		System.out.println( "FlagObserver test passed (" + games + " games)." );
+	}
+	
+	/**
+	 * Let the FlagEventWorker handle a request while the next tick already
+	 * records new events: only the events of the request may be consumed,
+	 * the bottle target has to be found in the world of the request.
+	 */
+	public static void testFlagEventWorker( Random random, int games )
+	{
+		DecisionEngine engine = new DecisionEngine( DecisionEngine.MODE_GENERAL_PURPOSE );
+		
+		for( int g = 0; g < games; ++g )
+		{
+			int numFlags = 2 + random.nextInt( 40 );
+			float[] fx = new float[ numFlags ], fy = new float[ numFlags ];
+			randomPoints( random, fx, fy, numFlags );
+			int[] owner = new int[ numFlags ];
+			Arrays.fill( owner, WorldSnapshot.NO_OWNER );
+			
+			WorldSnapshot world = new WorldSnapshot( 0, new float[ 0 ], new float[ 0 ], new float[ 0 ], new float[ 0 ], 0,
+			                                         fx, fy, owner.clone(), numFlags, 0 );
+			BotState state = engine.createState( world, 0 );
+			float px = random.nextInt( 200 ) - 100, py = random.nextInt( 200 ) - 100;
+			state.setPlayer( px, py, 0 );
+			
+			// The worker is not started, its work is done on this thread
+			FlagEventWorker worker = new FlagEventWorker( engine, state );
+			
+			// Tick 1: another player captures a flag
+			int first = random.nextInt( numFlags ), firstOwner = 1 + random.nextInt( 3 );
+			owner[ first ] = firstOwner;
+			WorldSnapshot world1 = new WorldSnapshot( 1, new float[ 0 ], new float[ 0 ], new float[ 0 ], new float[ 0 ], 0,
+			                                          fx, fy, owner.clone(), numFlags, 1 );
+			state.m_observer.update( world1, state );
+			worker.request( world1, px, py, false );
+			
+			// Tick 2 arrives before the worker ran: a flag free in tick 1 is captured
+			int second = ( first + 1 + random.nextInt( numFlags - 1 ) ) % numFlags;
+			owner[ second ] = 1 + random.nextInt( 3 );
+			WorldSnapshot world2 = new WorldSnapshot( 2, new float[ 0 ], new float[ 0 ], new float[ 0 ], new float[ 0 ], 0,
+			                                          fx, fy, owner.clone(), numFlags, 2 );
+			state.m_observer.update( world2, state );
+			
+			worker.work();
+			
+			assert state.m_observer.hasEvent() : "Event worker consumed a later event.";
+			assert state.m_observer.peekFlag() == second && state.m_observer.peekTick() == 2 : "Event worker consumed a later event.";
+			assert worker.takeTarget() == engine.findBottleTarget( world1, 0, px, py, first, firstOwner, state.m_opponents ) :
+			       "Event worker bottle target failed.";
+			assert engine.findBottleTarget( world1, 0, px, py, second, WorldSnapshot.NO_OWNER, state.m_opponents ) == -1 :
+			       "Bottle target for a free flag.";
+		}
+		
+		System.out.println( "FlagEventWorker test passed (" + games + " games)." );
+	}
+	
+	/**
+	 * Check that a speculated world is only taken over if it was exactly
+	 * right and that its precomputed flag counts match brute force.
+	 */
+	public static void testSpeculation( Random random, int worlds )
+	{
+		int range = DecisionEngine.FLAG_SAFETY_RANGE;
+		
+		for( int w = 0; w < worlds; ++w )
+		{
+			int n = random.nextInt( 300 ), numFlags = random.nextInt( 50 );
+			
+			// Movements of 1/8 steps keep the float arithmetic exact
+			float[] x = new float[ n ], y = new float[ n ], mx = new float[ n ], my = new float[ n ];
+			float[] nx = new float[ n ], ny = new float[ n ];
+			randomPoints( random, x, y, n );
+			for( int i = 0; i < n; ++i )
+			{
+				x[ i ] = Math.round( x[ i ] );
+				y[ i ] = Math.round( y[ i ] );
+				mx[ i ] = ( random.nextInt( 17 ) - 8 ) / 8.0f;
+				my[ i ] = ( random.nextInt( 17 ) - 8 ) / 8.0f;
+				nx[ i ] = x[ i ] + mx[ i ];
+				ny[ i ] = y[ i ] + my[ i ];
+			}
+			float[] fx = new float[ numFlags ], fy = new float[ numFlags ];
+			randomPoints( random, fx, fy, numFlags );
+			int[] owner = new int[ numFlags ];
+			Arrays.fill( owner, WorldSnapshot.NO_OWNER );
+			
+			WorldSnapshot world = new WorldSnapshot( w, x, y, nx, ny, n, fx, fy, owner, numFlags, 1 );
+			WorldSnapshot guess = world.speculate( range );
+			
+			// Next tick: everybody moves on, maybe one zombie turns
+			boolean turned = n > 0 && random.nextBoolean();
+			float[] x2 = new float[ n ], y2 = new float[ n ], nx2 = new float[ n ], ny2 = new float[ n ];
+			for( int i = 0; i < n; ++i )
+			{
+				x2[ i ] = nx[ i ];
+				y2[ i ] = ny[ i ];
+				nx2[ i ] = x2[ i ] + mx[ i ];
+				ny2[ i ] = y2[ i ] + my[ i ];
+			}
+			if( turned )
+				nx2[ random.nextInt( n ) ] += 0.5f;
+			
+			WorldSnapshot next = WorldSnapshot.create( w + 1, x2, y2, nx2, ny2, n,
+			                                           fx, fy, owner, numFlags, 2, guess );
+			assert next.isSpeculated() == !turned : "Speculation validation failed.";
+			assert next.hasFlagZombieCounts( range ) == !turned : "Speculation validation failed.";
+			
+			for( int f = 0; f < numFlags; ++f )
+			{
+				int reference = 0;
+				for( int i = 0; i < n; ++i )
+					if( inRange( nx2[ i ], ny2[ i ], fx[ f ], fy[ f ], range ) )
+						++reference;
+				
+				assert next.getZombieGrid().countInRange( fx[ f ], fy[ f ], range ) == reference : "Speculated grid failed.";
+				if( !turned )
+					assert next.getFlagZombieCount( f ) == reference : "Speculated counts failed.";
+			}
+			
+			// A guess of another tick is never used
+			assert !WorldSnapshot.create( w + 2, x2, y2, nx2, ny2, n, fx, fy, owner, numFlags, 2, guess )
+			                     .isSpeculated() : "Speculation of wrong tick used.";
+		}
+		
+		System.out.println( "Speculation test passed (" + worlds + " worlds)." );
+	}
+	
+	/**
+	 * Compare the predictions of the OpponentModel with exact transition
+	 * counts per player (flags have at most OpponentModel.SLOTS successors,
+	 * so the model has to be exact), check that the captures of one player
+	 * do not change the predictions for the others and check the capture
+	 * intervals.
+	 */
+	public static void testOpponentModel( Random random, int games )
+	{
+		for( int g = 0; g < games; ++g )
+		{
+			int numFlags = 2 + random.nextInt( 30 );
+			int numPlayers = 1 + random.nextInt( ZombieConstants.MAX_NUM_PLAYERS );
+			OpponentModel model = new OpponentModel( numFlags );
+			
+			// Every flag of every player gets up to SLOTS possible successors
+			int[][][] successors = new int[ numPlayers ][ numFlags ][];
+			for( int p = 0; p < numPlayers; ++p )
+				for( int f = 0; f < numFlags; ++f )
+				{
+					successors[ p ][ f ] = new int[ 1 + random.nextInt( OpponentModel.SLOTS ) ];
+					for( int k = 0; k < successors[ p ][ f ].length; ++k )
+						successors[ p ][ f ][ k ] = ( f + 1 + random.nextInt( numFlags - 1 ) ) % numFlags;
+				}
+			
+			int[][][] counts = new int[ numPlayers ][ numFlags ][ numFlags ];
+			int[] last = new int[ numPlayers ];
+			int[] lastTick = new int[ numPlayers ];
+			int[] predictions = new int[ numPlayers ];
+			Arrays.fill( last, -1 );
+			Arrays.fill( predictions, -1 );
+			
+			for( int tick = 0; tick < 1000; ++tick )
+			{
+				int p = random.nextInt( numPlayers );
+				int flag = last[ p ] < 0 ? random.nextInt( numFlags )
+				         : successors[ p ][ last[ p ] ][ random.nextInt( successors[ p ][ last[ p ] ].length ) ];
+				
+				model.onCapture( p, flag, tick );
+				for( int q = 0; q < numPlayers; ++q )
+					assert q == p || model.predictNext( q ) == predictions[ q ] : "OpponentModel mixed up players.";
+				
+				if( last[ p ] >= 0 )
+				{
+					++counts[ p ][ last[ p ] ][ flag ];
+					assert model.getCaptureInterval( p ) > 0 : "OpponentModel interval failed.";
+					assert model.getCaptures( p ) > 2 ||
+					       model.getCaptureInterval( p ) == tick - lastTick[ p ] : "OpponentModel interval failed.";
+				}
+				last[ p ] = flag;
+				lastTick[ p ] = tick;
+				
+				int max = 0;
+				for( int f = 0; f < numFlags; ++f )
+					max = Math.max( max, counts[ p ][ flag ][ f ] );
+				
+				int predicted = model.predictNext( p );
+				predictions[ p ] = predicted;
+				assert model.getLastFlag( p ) == flag : "OpponentModel last flag failed.";
+				if( max < OpponentModel.MIN_TRANSITIONS )
+					assert predicted == -1 : "OpponentModel predicted without data.";
+				else
+					assert predicted >= 0 && counts[ p ][ flag ][ predicted ] == max : "OpponentModel prediction failed.";
+			}
+		}
+		
+		System.out.println( "OpponentModel test passed (" + games + " games)." );
+	}
+	
+	/**
+	 * Let the PathPlanner repair its searches while zombies and the start
+	 * move and the goal switches between a few positions (more than the
+	 * planner keeps searches for) and compare every path cost with a
+	 * Dijkstra search from scratch on an independently built grid.
+	 */
+	public static void testPathPlanner( Random random, int games )
+	{
+		final int straight = 10, diagonal = 14;
+		float radius = 100;
+		
+		for( int g = 0; g < games; ++g )
+		{
+			int resolution = 8 + random.nextInt( 25 );
+			float dangerRadius = 3 + random.nextInt( 20 );
+			int weight = random.nextInt( 10 );
+			PathPlanner planner = new PathPlanner( radius, resolution, dangerRadius, weight );
+			
+			int n = random.nextInt( 100 );
+			float[] zx = new float[ n ], zy = new float[ n ];
+			randomPoints( random, zx, zy, n );
+			float[] start = { random.nextInt( 200 ) - 100, random.nextInt( 200 ) - 100 };
+			float[] goalX = new float[ PathPlanner.MAX_SEARCHES + 2 ], goalY = new float[ goalX.length ];
+			for( int i = 0; i < goalX.length; ++i )
+			{
+				goalX[ i ] = random.nextFloat() * 200 - 100;
+				goalY[ i ] = random.nextFloat() * 200 - 100;
+			}
+			int goal = 0;
+			
+			// Reference grid, built like the planner's
+			float cellSize = 2.0f * radius / resolution, limit = radius + cellSize * 0.75f;
+			int numCells = resolution * resolution;
+			float[] cx = new float[ numCells ], cy = new float[ numCells ];
+			boolean[] blocked = new boolean[ numCells ];
+			for( int v = 0; v < numCells; ++v )
+			{
+				cx[ v ] = ( v % resolution + 0.5f ) * cellSize - radius;
+				cy[ v ] = ( v / resolution + 0.5f ) * cellSize - radius;
+				blocked[ v ] = cx[ v ] * cx[ v ] + cy[ v ] * cy[ v ] > limit * limit;
+			}
+			int[] cost = new int[ numCells ];
+			int[] dist = new int[ numCells ];
+			boolean[] done = new boolean[ numCells ];
+			float[] out = new float[ 2 ];
+			
+			for( int replan = 0; replan < 30; ++replan )
+			{
+				// Some zombies walk, some jump, the start moves, the goal often changes
+				for( int i = 0; i < n; ++i )
+				{
+					int r = random.nextInt( 10 );
+					if( r == 0 )
+					{
+						zx[ i ] = random.nextFloat() * 200 - 100;
+						zy[ i ] = random.nextFloat() * 200 - 100;
+					}
+					else if( r < 5 )
+					{
+						zx[ i ] += random.nextFloat() * 4 - 2;
+						zy[ i ] += random.nextFloat() * 4 - 2;
+					}
+				}
+				start[ 0 ] = Math.max( -radius, Math.min( radius, start[ 0 ] + random.nextInt( 11 ) - 5 ) );
+				start[ 1 ] = Math.max( -radius, Math.min( radius, start[ 1 ] + random.nextInt( 11 ) - 5 ) );
+				if( random.nextInt( 3 ) == 0 )
+					goal = random.nextInt( goalX.length );
+				
+				planner.updateCosts( zx, zy, n );
+				boolean found = planner.plan( start[ 0 ], start[ 1 ], goalX[ goal ], goalY[ goal ], out );
+				
+				// Cell costs and Dijkstra from the goal (edge costs are symmetric)
+				for( int v = 0; v < numCells; ++v )
+				{
+					int danger = 0;
+					for( int i = 0; i < n; ++i )
+					{
+						float dx = cx[ v ] - zx[ i ], dy = cy[ v ] - zy[ i ];
+						if( dx * dx + dy * dy <= dangerRadius * dangerRadius )
+							++danger;
+					}
+					cost[ v ] = 1 + weight * danger;
+				}
+				int s = cell( start[ 0 ], start[ 1 ], radius, cellSize, resolution );
+				int t = cell( goalX[ goal ], goalY[ goal ], radius, cellSize, resolution );
+				
+				Arrays.fill( dist, Integer.MAX_VALUE );
+				Arrays.fill( done, false );
+				if( !blocked[ t ] )
+					dist[ t ] = 0;
+				while( true )
+				{
+					int u = -1;
+					for( int v = 0; v < numCells; ++v )
+						if( !done[ v ] && dist[ v ] != Integer.MAX_VALUE && ( u < 0 || dist[ v ] < dist[ u ] ) )
+							u = v;
+					if( u < 0 )
+						break;
+					done[ u ] = true;
+					
+					for( int dy = -1; dy <= 1; ++dy )
+					{
+						for( int dx = -1; dx <= 1; ++dx )
+						{
+							int x = u % resolution + dx, y = u / resolution + dy;
+							if( ( dx == 0 && dy == 0 ) || x < 0 || y < 0 || x >= resolution || y >= resolution )
+								continue;
+							int v = y * resolution + x;
+							if( blocked[ v ] )
+								continue;
+							int d = dist[ u ] + ( dx != 0 && dy != 0 ? diagonal : straight ) * ( cost[ u ] + cost[ v ] );
+							dist[ v ] = Math.min( dist[ v ], d );
+						}
+					}
+				}
+				
+				boolean reachable = !blocked[ s ] && dist[ s ] != Integer.MAX_VALUE;
+				assert found == reachable : "PathPlanner reachability failed.";
+				if( reachable )
+					assert planner.getPathCost() == dist[ s ] : "PathPlanner cost failed: " +
+					       planner.getPathCost() + " instead of " + dist[ s ];
+			}
+		}
+		
+		System.out.println( "PathPlanner test passed (" + games + " games)." );
+	}
+	
+	/**
+	 * Check that the route visits every flag exactly once and that removing,
+	 * reinserting and skipping flags keeps the tour order (compared with a
+	 * plain array walk over the tour).
+	 */
+	public static void testRoutePlanner( Random random, int games )
+	{
+		for( int g = 0; g < games; ++g )
+		{
+			int numFlags = random.nextInt( 200 );
+			float[] fx = new float[ numFlags ], fy = new float[ numFlags ];
+			randomPoints( random, fx, fy, numFlags );
+			float clusterSize = 1 + random.nextInt( 50 );
+			
+			// Capturing the targets one by one yields the tour, which has to be a permutation
+			RoutePlanner route = new RoutePlanner( fx, fy, numFlags, clusterSize );
+			int[] tour = new int[ numFlags ], position = new int[ numFlags ];
+			boolean[] seen = new boolean[ numFlags ];
+			for( int p = 0; p < numFlags; ++p )
+			{
+				int flag = route.getTarget();
+				assert flag >= 0 && !seen[ flag ] : "Route is no permutation.";
+				seen[ flag ] = true;
+				tour[ p ] = flag;
+				position[ flag ] = p;
+				route.remove( flag );
+				assert route.size() == numFlags - p - 1 : "Route size failed.";
+			}
+			assert route.getTarget() == -1 : "Empty route has a target.";
+			
+			// Random changes on a new route, the reference walks over the tour
+			route = new RoutePlanner( fx, fy, numFlags, clusterSize );
+			boolean[] present = new boolean[ numFlags ];
+			Arrays.fill( present, true );
+			int size = numFlags, cursor = numFlags > 0 ? 0 : -1;
+			
+			if( random.nextBoolean() && numFlags > 0 )
+			{
+				float px = random.nextInt( 200 ) - 100, py = random.nextInt( 200 ) - 100;
+				route.start( fx, fy, px, py );
+				float min = Float.MAX_VALUE;
+				for( int p = 0; p < numFlags; ++p )
+				{
+					float dx = fx[ tour[ p ] ] - px, dy = fy[ tour[ p ] ] - py;
+					if( dx * dx + dy * dy < min )
+					{
+						min = dx * dx + dy * dy;
+						cursor = p;
+					}
+				}
+			}
+			
+			for( int op = 0; op < 300 && numFlags > 0; ++op )
+			{
+				int flag = random.nextInt( numFlags ), p = position[ flag ];
+				switch( random.nextInt( 3 ) )
+				{
+				case 0:
+					route.remove( flag );
+					if( present[ p ] )
+					{
+						present[ p ] = false;
+						if( --size == 0 )
+							cursor = -1;
+						else if( cursor == p )
+							cursor = nextPresent( present, p );
+					}
+					break;
+				case 1:
+					route.insert( flag );
+					if( !present[ p ] )
+					{
+						present[ p ] = true;
+						if( size++ == 0 )
+							cursor = p;
+					}
+					break;
+				default:
+					route.advance();
+					if( cursor >= 0 )
+						cursor = nextPresent( present, cursor );
+				}
+				
+				assert route.size() == size : "Route size failed.";
+				assert route.getTarget() == ( cursor < 0 ? -1 : tour[ cursor ] ) : "Route order failed.";
+				assert route.contains( flag ) == present[ p ] : "Route contains failed.";
+			}
+		}
+		
+		System.out.println( "RoutePlanner test passed (" + games + " games)." );
+	}
+	
+	/**
+	 * Compare the decisions of the DecisionEngine (without route and path
+	 * planner) with the logic of the original GeneralPurpose bot: the
+	 * nearest unlocked flag that is not ours and has less than two zombies
+	 * around it is the target (the farthest flag if there is none), and
+	 * bottles are thrown at the flag found by the original nearest flag
+	 * search after another player captured a flag.
+	 */
+	public static void testDecisionEngine( Random random, int worlds )
+	{
+		DecisionEngine engine = new DecisionEngine( DecisionEngine.MODE_GENERAL_PURPOSE );
+		int range = DecisionEngine.FLAG_SAFETY_RANGE;
+		int bottles = 0;
+		
+		for( int w = 0; w < worlds; ++w )
+		{
+			int numFlags = 1 + random.nextInt( 60 );
+			WorldSnapshot world = randomWorld( random, random.nextInt( 400 ), numFlags, 0 );
+			world = randomWorld( random, world.getNumZombies(), numFlags, 1, world );
+			int player = random.nextInt( 4 );
+			float px = random.nextInt( 200 ) - 100, py = random.nextInt( 200 ) - 100;
+			
+			BotState state = new BotState( numFlags, player, engine, null, null );
+			state.setPlayer( px, py, 0 );
+			for( int i = 0; i < numFlags; ++i )
+				if( random.nextInt( 4 ) == 0 )
+					state.m_locker.lock( ActionLocker.ACTION_OWNED_FLAGS + i, 3 );
+			state.m_cache.reset( world );
+			engine.scanFlags( world, state );
+			engine.chooseTarget( world, state );
+			
+			// Target of the original bot
+			Vector own = new Vector( px, py );
+			float[] fx = world.getFlagX(), fy = world.getFlagY();
+			float[] zx = world.getZombieX(), zy = world.getZombieY();
+			float[] nx = world.getZombieNextX(), ny = world.getZombieNextY();
+			Vector longest = new Vector( fx[ 0 ], fy[ 0 ] ).sub( own );
+			int target = -1;
+			float min = Float.MAX_VALUE;
+			for( int i = 0; i < numFlags; ++i )
+			{
+				Vector flag = new Vector( fx[ i ], fy[ i ] );
+				if( flag.sub( own ).length() > longest.length() )
+					longest = flag.sub( own );
+				
+				if( !( flag.euclideanDistance( own ) < min ) ||
+				        state.m_locker.isLocked( ActionLocker.ACTION_OWNED_FLAGS + i ) ||
+				        world.getFlagOwner( i ) == player )
+					continue;
+				
+				int zombies = 0;
+				for( int z = 0; z < world.getNumZombies(); ++z )
+					if( inRangeOriginal( zx[ z ], zy[ z ], nx[ z ] - zx[ z ], ny[ z ] - zy[ z ], fx[ i ], fy[ i ], range ) )
+						++zombies;
+				if( zombies < 2 )
+				{
+					target = i;
+					min = flag.euclideanDistance( own );
+				}
+			}
+			
+			assert state.getTargetFlag() == target : "DecisionEngine target failed.";
+			
+			// The original subtracted our position from the longest flag vector a second time
+			Vector fallback = longest.sub( own );
+			if( target < 0 && fallback.length() > 0 )
+				assert cmp( state.m_targetX, fallback.x / fallback.length() ) &&
+				       cmp( state.m_targetY, fallback.y / fallback.length() ) : "DecisionEngine fallback target failed.";
+			
+			// Bottle targets after captures of other players
+			for( int captured = 0; captured < numFlags; ++captured )
+			{
+				int owner = world.getFlagOwner( captured );
+				if( owner == WorldSnapshot.NO_OWNER || owner == player )
+					continue;
+				
+				assert engine.findBottleTarget( world, player, px, py, captured, owner, null ) ==
+				       originalBottleTarget( world, player, own, captured ) : "DecisionEngine bottle target failed.";
+				++bottles;
+			}
+		}
+		
+		System.out.println( "DecisionEngine test passed (" + worlds + " worlds, " + bottles + " bottles)." );
+	}
+	
+	/**
+	 * Bottle target of the original bot (onOtherCapturedFlag())
+	 */
+	private static int originalBottleTarget( WorldSnapshot world, int player, Vector own, int captured )
+	{
+		int numFlags = world.getNumFlags();
+		int index = world.getFlagOwner( captured );
+		int[] playerFlags = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
+		for( int i = 0; i < numFlags; ++i )
+			if( world.getFlagOwner( i ) != WorldSnapshot.NO_OWNER )
+				playerFlags[ world.getFlagOwner( i ) ]++;
+		
+		int bestPlayerIdx = -1, bestPlayerFlags = 0;
+		for( int i = 0; i < playerFlags.length; ++i )
+		{
+			if( playerFlags[ i ] > bestPlayerFlags && playerFlags[ i ] > numFlags / 4 )
+			{
+				bestPlayerIdx = i;
+				bestPlayerFlags = playerFlags[ i ];
+			}
+		}
+		if( bestPlayerIdx == player )
+			return -1;
+		
+		float[] fx = world.getFlagX(), fy = world.getFlagY();
+		int nearestFlag = 0;
+		float minDist = Float.MAX_VALUE;
+		for( int i = 0; i < numFlags; ++i )
+		{
+			if( i == captured )
+				continue;
+			
+			float distance = new Vector( fx[ i ], fy[ i ] ).sub( new Vector( fx[ captured ], fy[ captured ] ) ).length();
+			if( distance < minDist && world.getFlagOwner( i ) != index )
+			{
+				if( own.sub( new Vector( fx[ nearestFlag ], fy[ nearestFlag ] ) ).length() / ZombieConstants.BOTTLE_SPEED
+				        < minDist / ZombieConstants.MAX_PLAYER_SPEED + 10 )
+				{
+					minDist = distance;
+					nearestFlag = i;
+				}
+			}
+		}
+		
+		return minDist < Float.MAX_VALUE ? nearestFlag : -1;
+	}
+	
+	/**
+	 * Next present tour position after p (cyclic)
+	 */
+	private static int nextPresent( boolean[] present, int p )
+	{
+		do
+			p = p + 1 == present.length ? 0 : p + 1;
+		while( !present[ p ] );
+		return p;
+	}
+	
+	/**
+	 * Random points: uniform, clustered and duplicated ones (integer
+	 * coordinates to hit range borders exactly).
+	 */
+	private static void randomPoints( Random random, float[] x, float[] y, int n )
+	{
+		for( int i = 0; i < n; ++i )
+		{
+			switch( random.nextInt( 4 ) )
+			{
+			case 0:
+				x[ i ] = random.nextInt( 200 ) - 100;
+				y[ i ] = random.nextInt( 200 ) - 100;
+				break;
+			case 1:
+				x[ i ] = 20 + random.nextFloat() * 5;
+				y[ i ] = -30 + random.nextFloat() * 5;
+				break;
+			case 2:
+				x[ i ] = i > 0 ? x[ i - 1 ] : 0;
+				y[ i ] = i > 0 ? y[ i - 1 ] : 0;
+				break;
+			default:
+				x[ i ] = random.nextFloat() * 200 - 100;
+				y[ i ] = random.nextFloat() * 200 - 100;
+			}
+		}
+	}
+	
+	/**
+	 * Create a random world
+	 */
+	private static WorldSnapshot randomWorld( Random random, int numZombies, int numFlags, int tick )
+	{
+		return randomWorld( random, numZombies, numFlags, tick, null );
+	}
+	
+	/**
+	 * Create a random world; flag positions are taken from the last world
+	 * (if given), some of its flags change their owner.
+	 */
+	private static WorldSnapshot randomWorld( Random random, int numZombies, int numFlags, int tick,
+	                                          WorldSnapshot last )
+	{
+		float[] zx = new float[ numZombies ], zy = new float[ numZombies ];
+		float[] nx = new float[ numZombies ], ny = new float[ numZombies ];
+		randomPoints( random, zx, zy, numZombies );
+		for( int i = 0; i < numZombies; ++i )
+		{
+			nx[ i ] = zx[ i ] + random.nextInt( 3 ) - 1;
+			ny[ i ] = zy[ i ] + random.nextInt( 3 ) - 1;
+		}
+		
+		float[] fx, fy;
+		int[] owner = new int[ numFlags ];
+		if( last == null )
+		{
+			fx = new float[ numFlags ];
+			fy = new float[ numFlags ];
+			randomPoints( random, fx, fy, numFlags );
+			Arrays.fill( owner, WorldSnapshot.NO_OWNER );
+		}
+		else
+		{
+			fx = last.getFlagX();
+			fy = last.getFlagY();
+			for( int i = 0; i < numFlags; ++i )
+				owner[ i ] = random.nextInt( 10 ) == 0 ? random.nextInt( 4 ) - 1 : last.getFlagOwner( i );
+		}
+		
+		return new WorldSnapshot( tick, zx, zy, nx, ny, numZombies, fx, fy, owner, numFlags, tick );
+	}
+	
+	/**
+	 * Cell of a position in a square grid centered at the origin
+	 */
+	private static int cell( float x, float y, float radius, float cellSize, int resolution )
+	{
+		int cx = Math.max( 0, Math.min( resolution - 1, (int)Math.floor( ( x + radius ) / cellSize ) ) );
+		int cy = Math.max( 0, Math.min( resolution - 1, (int)Math.floor( ( y + radius ) / cellSize ) ) );
+		return cy * resolution + cx;
+	}
+	
+	/**
+	 * Range predicate used by all spatial queries
+	 */
+	private static boolean inRange( float x, float y, float qx, float qy, float range )
+	{
+		float dx = x - qx, dy = y - qy;
+		return dx * dx + dy * dy <= range * range;
+	}
+	
+	/**
+	 * Range predicate of the original cache: predicted position (position
+	 * plus movement) minus query position, length compared with the range
+	 */
+	private static boolean inRangeOriginal( float x, float y, float mx, float my, float qx, float qy, int range )
+	{
+		return new Vector( x, y ).add( new Vector( mx, my ) ).sub( new Vector( qx, qy ) ).length() <= range;
+	}
+	
 	private static boolean cmp( double a, double b )
 	{
 		return Math.abs( a - b ) < Math.pow( 10 , -6 );
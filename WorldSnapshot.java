@@ -0,0 +1,541 @@
+import core.Vector;
+import core.ai.AiFlagInfo;
+import core.ai.AiMapInfo;
+import core.ai.AiZombieInfo;
+import core.constants.ZombieConstants;
+
+/**
+ * Immutable view of the world for a single tick
+ *
+ * Contains everything that does not depend on a special player: the
+ * zombies (current and predicted positions) as plain arrays, spatial
+ * indices for zombies and flags and the flag ownership. As nothing is
+ * changed after construction, one snapshot can be used by several bots
+ * at the same time.
+ * @see SharedWorld
+ *
+ * A snapshot can also be a guess of the next tick (speculate()), built
+ * between two ticks. The real snapshot of that tick takes the guess'
+ * spatial indices and flag safety counts if the predicted zombie positions
+ * turn out to be exactly the guessed ones.
+ * @see WorldSpeculator
+ *
+ * @note The arrays returned by the getters are not copied for performance
+ *       reasons. They must never be modified.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class WorldSnapshot
+{
+    //! Owner index used for flags without owner
+    public static final int NO_OWNER = -1;
+
+    //! Number of zombies (and flags) sampled for the fingerprint
+    private static final int FINGERPRINT_SAMPLES = 8;
+
+    //! Tick this snapshot was created for
+    private final int m_tick;
+    //! Checksum to detect snapshots of different worlds with the same tick
+    private final long m_fingerprint;
+
+    //! Number of zombies
+    private final int m_numZombies;
+    //! Current zombie positions
+    private final float[] m_zombieX;
+    private final float[] m_zombieY;
+    //! Predicted zombie positions (position + movement)
+    private final float[] m_zombieNextX;
+    private final float[] m_zombieNextY;
+    //! Spatial index over the predicted zombie positions
+    private final SpatialGrid m_zombieGrid;
+    //! Largest distance between a current and a predicted zombie position
+    private final float m_maxZombieStep;
+
+    //! Number of flags
+    private final int m_numFlags;
+    //! Flag positions
+    private final float[] m_flagX;
+    private final float[] m_flagY;
+    //! Owner of every flag or NO_OWNER
+    private final int[] m_flagOwner;
+    //! Spatial index over the flag positions
+    private final SpatialGrid m_flagGrid;
+    //! Zombies around every flag (null if not precomputed) and the range they were counted in
+    private final int[] m_flagZombieCounts;
+    private final int m_flagCountRange;
+    //! Were the zombie grid and the counts taken from a speculation?
+    private final boolean m_speculated;
+    //! Map the snapshot was created from (null if not created by fromMap()),
+    //! set before the snapshot is published and never changed afterwards
+    private AiMapInfo m_source = null;
+    //! Number of flags owned by every player
+    private final int[] m_ownerCounts;
+
+    /**
+     * Create a snapshot from plain arrays. The arrays are referenced, not
+     * copied, so the caller must not modify them afterwards. This allows
+     * creating worlds without the game (simulations, benchmarks, tests).
+     *
+     * @param tick Tick this snapshot is created for
+     * @param zombieX Current x coordinates of the zombies
+     * @param zombieY Current y coordinates of the zombies
+     * @param zombieNextX Predicted x coordinates of the zombies
+     * @param zombieNextY Predicted y coordinates of the zombies
+     * @param numZombies Number of zombies
+     * @param flagX x coordinates of the flags
+     * @param flagY y coordinates of the flags
+     * @param flagOwner Owner index of every flag or NO_OWNER
+     * @param numFlags Number of flags
+     * @param fingerprint Checksum identifying this world
+     */
+    public WorldSnapshot( int tick,
+                          float[] zombieX, float[] zombieY,
+                          float[] zombieNextX, float[] zombieNextY, int numZombies,
+                          float[] flagX, float[] flagY, int[] flagOwner, int numFlags,
+                          long fingerprint )
+    {
+        this( tick, zombieX, zombieY, zombieNextX, zombieNextY, numZombies,
+              flagX, flagY, flagOwner, numFlags, fingerprint, null, null, null, 0, false );
+    }
+
+    /**
+     * Create a snapshot with (partly) prebuilt indices
+     *
+     * @param zombieGrid Grid over the predicted zombie positions or null to build it
+     * @param flagGrid Grid over the flag positions or null to build it
+     * @param flagZombieCounts Zombies around every flag or null
+     * @param flagCountRange Range the zombies around the flags were counted in
+     * @param speculated Were the zombie grid and the counts taken from a speculation?
+     */
+    private WorldSnapshot( int tick,
+                           float[] zombieX, float[] zombieY,
+                           float[] zombieNextX, float[] zombieNextY, int numZombies,
+                           float[] flagX, float[] flagY, int[] flagOwner, int numFlags,
+                           long fingerprint, SpatialGrid zombieGrid, SpatialGrid flagGrid,
+                           int[] flagZombieCounts, int flagCountRange, boolean speculated )
+    {
+        assert numZombies >= 0 && numFlags >= 0 : "Negative number of objects";
+
+        m_tick        = tick;
+        m_fingerprint = fingerprint;
+
+        m_numZombies  = numZombies;
+        m_zombieX     = zombieX;
+        m_zombieY     = zombieY;
+        m_zombieNextX = zombieNextX;
+        m_zombieNextY = zombieNextY;
+        m_zombieGrid  = zombieGrid != null ? zombieGrid
+                : new SpatialGrid( zombieNextX, zombieNextY, numZombies,
+                                   ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS );
+
+        float maxStepSq = 0;
+        for( int i = 0; i < numZombies; ++i )
+        {
+            float dx = zombieNextX[ i ] - zombieX[ i ];
+            float dy = zombieNextY[ i ] - zombieY[ i ];
+            maxStepSq = Math.max( maxStepSq, dx * dx + dy * dy );
+        }
+        m_maxZombieStep = (float)Math.sqrt( maxStepSq );
+
+        m_numFlags  = numFlags;
+        m_flagX     = flagX;
+        m_flagY     = flagY;
+        m_flagOwner = flagOwner;
+        m_flagGrid  = flagGrid != null ? flagGrid
+                : new SpatialGrid( flagX, flagY, numFlags,
+                                   ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS );
+
+        m_flagZombieCounts = flagZombieCounts;
+        m_flagCountRange   = flagCountRange;
+        m_speculated       = speculated;
+
+        // Count flags per player
+        m_ownerCounts = new int[ ZombieConstants.MAX_NUM_PLAYERS ];
+        for( int i = 0; i < numFlags; ++i )
+        {
+            if( flagOwner[ i ] != NO_OWNER )
+                ++m_ownerCounts[ flagOwner[ i ] ];
+        }
+    }
+
+    /**
+     * Create a snapshot from plain arrays (see the public constructor) and
+     * take what is still valid from a speculation of this tick:
+     *    - the flag grid, if the flags did not move
+     *    - the zombie grid and the flag safety counts, if additionally the
+     *      predicted zombie positions are exactly the guessed ones
+     *
+     * @param speculation Guess of this tick (see speculate()) or null
+     *
+     * @return New snapshot
+     */
+    public static WorldSnapshot create( int tick,
+                                        float[] zombieX, float[] zombieY,
+                                        float[] zombieNextX, float[] zombieNextY, int numZombies,
+                                        float[] flagX, float[] flagY, int[] flagOwner, int numFlags,
+                                        long fingerprint, WorldSnapshot speculation )
+    {
+        if( speculation == null || speculation.m_tick != tick ||
+                speculation.m_numFlags != numFlags ||
+                !equal( flagX, speculation.m_flagX, numFlags ) ||
+                !equal( flagY, speculation.m_flagY, numFlags ) )
+            return new WorldSnapshot( tick, zombieX, zombieY, zombieNextX, zombieNextY, numZombies,
+                                      flagX, flagY, flagOwner, numFlags, fingerprint );
+
+        // Flags never move, but the zombies have to be checked
+        if( speculation.m_numZombies != numZombies ||
+                !equal( zombieNextX, speculation.m_zombieNextX, numZombies ) ||
+                !equal( zombieNextY, speculation.m_zombieNextY, numZombies ) )
+            return new WorldSnapshot( tick, zombieX, zombieY, zombieNextX, zombieNextY, numZombies,
+                                      flagX, flagY, flagOwner, numFlags, fingerprint,
+                                      null, speculation.m_flagGrid, null, 0, false );
+
+        return new WorldSnapshot( tick, zombieX, zombieY, zombieNextX, zombieNextY, numZombies,
+                                  flagX, flagY, flagOwner, numFlags, fingerprint,
+                                  speculation.m_zombieGrid, speculation.m_flagGrid,
+                                  speculation.m_flagZombieCounts, speculation.m_flagCountRange, true );
+    }
+
+    /**
+     * Guess the snapshot of the next tick: every zombie moves on like it
+     * did in this tick, the flags keep their owners. The spatial indices
+     * and the number of zombies around every flag are prepared.
+     *
+     * @param flagCountRange Range around the flags zombies are counted in
+     *
+     * @return Guess of the next tick (fingerprint 0, never shared)
+     */
+    public WorldSnapshot speculate( int flagCountRange )
+    {
+        float[] nextX = new float[ m_numZombies ];
+        float[] nextY = new float[ m_numZombies ];
+        for( int i = 0; i < m_numZombies; ++i )
+        {
+            nextX[ i ] = m_zombieNextX[ i ] + ( m_zombieNextX[ i ] - m_zombieX[ i ] );
+            nextY[ i ] = m_zombieNextY[ i ] + ( m_zombieNextY[ i ] - m_zombieY[ i ] );
+        }
+
+        SpatialGrid grid = new SpatialGrid( nextX, nextY, m_numZombies,
+                                            ZombieConstants.FLAG_CONQUER_VOLUME_RADIUS );
+        int[] counts = new int[ m_numFlags ];
+        for( int i = 0; i < m_numFlags; ++i )
+            counts[ i ] = grid.countInRange( m_flagX[ i ], m_flagY[ i ], flagCountRange );
+
+        return new WorldSnapshot( m_tick + 1, m_zombieNextX, m_zombieNextY, nextX, nextY, m_numZombies,
+                                  m_flagX, m_flagY, m_flagOwner, m_numFlags, 0,
+                                  grid, m_flagGrid, counts, flagCountRange, false );
+    }
+
+    /**
+     * Create a snapshot of the game's map information.
+     *
+     * @param map Current game situation
+     * @param tick Tick the map belongs to
+     *
+     * @return New snapshot of the map
+     */
+    public static WorldSnapshot fromMap( AiMapInfo map, int tick )
+    {
+        return WorldSnapshot.fromMap( map, tick, null );
+    }
+
+    /**
+     * Create a snapshot of the game's map information and reuse what is
+     * still valid from a speculation of this tick.
+     *
+     * @param map Current game situation
+     * @param tick Tick the map belongs to
+     * @param speculation Guess of this tick to reuse parts of or null
+     *
+     * @return New snapshot of the map
+     * @see create()
+     */
+    public static WorldSnapshot fromMap( AiMapInfo map, int tick, WorldSnapshot speculation )
+    {
+        WorldSnapshot world = WorldSnapshot.fromMap( map.getZombies(), map.getFlags(), tick, speculation );
+        world.m_source = map;
+        return world;
+    }
+
+    /**
+     * Create a snapshot of already queried zombies and flags.
+     *
+     * @param zombies Zombies of the current tick
+     * @param flags Flags of the current tick
+     * @param tick Tick the information belongs to
+     * @param speculation Guess of this tick to reuse parts of or null
+     *
+     * @return New snapshot of the information
+     * @see create()
+     */
+    public static WorldSnapshot fromMap( AiZombieInfo[] zombies, AiFlagInfo[] flags, int tick,
+                                         WorldSnapshot speculation )
+    {
+        int numZombies = zombies.length;
+        float[] zombieX     = new float[ numZombies ];
+        float[] zombieY     = new float[ numZombies ];
+        float[] zombieNextX = new float[ numZombies ];
+        float[] zombieNextY = new float[ numZombies ];
+
+        for( int i = 0; i < numZombies; ++i )
+        {
+            Vector p = zombies[ i ].getPosition();
+            Vector m = zombies[ i ].getMovement();
+            zombieX[ i ] = p.x;
+            zombieY[ i ] = p.y;
+            // Same as p.add( m ), but without creating a vector
+            zombieNextX[ i ] = p.x + m.x;
+            zombieNextY[ i ] = p.y + m.y;
+        }
+
+        int numFlags = flags.length;
+        float[] flagX   = new float[ numFlags ];
+        float[] flagY   = new float[ numFlags ];
+        int[] flagOwner = new int[ numFlags ];
+
+        for( int i = 0; i < numFlags; ++i )
+        {
+            Vector p = flags[ i ].getPosition();
+            Integer owner = flags[ i ].getCurrentOwnerIndex();
+            flagX[ i ] = p.x;
+            flagY[ i ] = p.y;
+            flagOwner[ i ] = owner == null ? NO_OWNER : owner;
+        }
+
+        return WorldSnapshot.create( tick,
+                                     zombieX, zombieY, zombieNextX, zombieNextY, numZombies,
+                                     flagX, flagY, flagOwner, numFlags,
+                                     WorldSnapshot.fingerprint( zombies, flags ), speculation );
+    }
+
+    /**
+     * Create a checksum of a world. Only a few zombies and flags are
+     * sampled, so this is much cheaper than creating a snapshot, but still
+     * reliably tells different worlds apart.
+     *
+     * @param zombies Zombies of the world
+     * @param flags Flags of the world
+     *
+     * @return Checksum of the world
+     */
+    public static long fingerprint( AiZombieInfo[] zombies, AiFlagInfo[] flags )
+    {
+        long h = zombies.length * 31L + flags.length;
+
+        int step = Math.max( 1, zombies.length / FINGERPRINT_SAMPLES );
+        for( int i = 0; i < zombies.length; i += step )
+        {
+            Vector p = zombies[ i ].getPosition();
+            h = h * 31 + Float.floatToIntBits( p.x );
+            h = h * 31 + Float.floatToIntBits( p.y );
+        }
+
+        step = Math.max( 1, flags.length / FINGERPRINT_SAMPLES );
+        for( int i = 0; i < flags.length; i += step )
+        {
+            Integer owner = flags[ i ].getCurrentOwnerIndex();
+            h = h * 31 + ( owner == null ? NO_OWNER : owner );
+        }
+
+        return h;
+    }
+
+    /**
+     * Check if this snapshot was created from the given map object. The
+     * game hands the same map object to every bot of a tick, so this is
+     * the cheapest way to recognize the same world.
+     *
+     * @param map Map of the game
+     * @return true, if fromMap() created this snapshot from that object
+     */
+    public boolean isCreatedFrom( AiMapInfo map )
+    {
+        return m_source == map;
+    }
+
+    /**
+     * Get the tick this snapshot was created for
+     * @return Tick of the snapshot
+     */
+    public int getTick()
+    {
+        return m_tick;
+    }
+
+    /**
+     * Get the checksum of the world
+     * @return Checksum of the world
+     * @see fingerprint()
+     */
+    public long getFingerprint()
+    {
+        return m_fingerprint;
+    }
+
+    /**
+     * Get the number of zombies
+     * @return Number of zombies in the world
+     */
+    public int getNumZombies()
+    {
+        return m_numZombies;
+    }
+
+    /**
+     * Get the current x coordinates of the zombies
+     * @return x coordinates (do not modify)
+     */
+    public float[] getZombieX()
+    {
+        return m_zombieX;
+    }
+
+    /**
+     * Get the current y coordinates of the zombies
+     * @return y coordinates (do not modify)
+     */
+    public float[] getZombieY()
+    {
+        return m_zombieY;
+    }
+
+    /**
+     * Get the predicted x coordinates (position + movement) of the zombies
+     * @return Predicted x coordinates (do not modify)
+     */
+    public float[] getZombieNextX()
+    {
+        return m_zombieNextX;
+    }
+
+    /**
+     * Get the predicted y coordinates (position + movement) of the zombies
+     * @return Predicted y coordinates (do not modify)
+     */
+    public float[] getZombieNextY()
+    {
+        return m_zombieNextY;
+    }
+
+    /**
+     * Get the spatial index over the predicted zombie positions
+     * @return Zombie grid
+     */
+    public SpatialGrid getZombieGrid()
+    {
+        return m_zombieGrid;
+    }
+
+    /**
+     * Get the largest distance a zombie moves in this tick (between its
+     * current and its predicted position)
+     * @return Largest zombie step (0 if there are no zombies)
+     */
+    public float getMaxZombieStep()
+    {
+        return m_maxZombieStep;
+    }
+
+    /**
+     * Get the number of flags
+     * @return Number of flags in the world
+     */
+    public int getNumFlags()
+    {
+        return m_numFlags;
+    }
+
+    /**
+     * Get the x coordinates of the flags
+     * @return x coordinates (do not modify)
+     */
+    public float[] getFlagX()
+    {
+        return m_flagX;
+    }
+
+    /**
+     * Get the y coordinates of the flags
+     * @return y coordinates (do not modify)
+     */
+    public float[] getFlagY()
+    {
+        return m_flagY;
+    }
+
+    /**
+     * Get the owner of a flag
+     *
+     * @param flagIndex Index of the flag
+     * @return Index of the owning player or NO_OWNER
+     */
+    public int getFlagOwner( int flagIndex )
+    {
+        return m_flagOwner[ flagIndex ];
+    }
+
+    /**
+     * Get the spatial index over the flag positions
+     * @return Flag grid
+     */
+    public SpatialGrid getFlagGrid()
+    {
+        return m_flagGrid;
+    }
+
+    /**
+     * Get the number of flags a player owns
+     *
+     * @param playerIndex Index of the player
+     * @return Number of flags owned by the player
+     */
+    public int getOwnerCount( int playerIndex )
+    {
+        return m_ownerCounts[ playerIndex ];
+    }
+
+    /**
+     * Check if the zombies around the flags were precomputed
+     *
+     * @param range Range the caller wants to count in
+     * @return true, if getFlagZombieCount() can be used for this range
+     */
+    public boolean hasFlagZombieCounts( int range )
+    {
+        return m_flagZombieCounts != null && m_flagCountRange == range;
+    }
+
+    /**
+     * Get the number of predicted zombie positions around a flag
+     *
+     * @param flagIndex Index of the flag
+     * @return Number of zombies in the precomputed range
+     * @see hasFlagZombieCounts()
+     */
+    public int getFlagZombieCount( int flagIndex )
+    {
+        return m_flagZombieCounts[ flagIndex ];
+    }
+
+    /**
+     * Check if the zombie grid of this snapshot was built by a speculation
+     * @return true, if the speculation for this tick was right
+     */
+    public boolean isSpeculated()
+    {
+        return m_speculated;
+    }
+
+    /**
+     * Compare the first n values of two arrays bit by bit
+     */
+    private static boolean equal( float[] a, float[] b, int n )
+    {
+        for( int i = 0; i < n; ++i )
+        {
+            if( Float.floatToIntBits( a[ i ] ) != Float.floatToIntBits( b[ i ] ) )
+                return false;
+        }
+        return true;
+    }
+}
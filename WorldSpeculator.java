@@ -0,0 +1,105 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread guessing the world of the next tick
+ *
+ * After a bot decided, the game runs the other bots and the zombies before
+ * the next think(). The speculator uses that time to build the snapshot
+ * the next tick will most likely have (WorldSnapshot.speculate()): its
+ * spatial indices and flag safety counts. The next snapshot takes them
+ * over if the guess was exactly right, otherwise everything is computed
+ * as usual, so a wrong guess only costs the comparison.
+ * @see SharedWorld
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class WorldSpeculator extends Thread
+{
+    //! Range around the flags zombies are counted in
+    private final int m_flagCountRange;
+
+    //! World of the current request (written before m_requested)
+    private WorldSnapshot m_world = null;
+    //! Guess of the last finished request (null if none)
+    private volatile WorldSnapshot m_result = null;
+
+    //! Number of the last requested and of the last finished request
+    private volatile int m_requested = 0;
+    private volatile int m_finished = 0;
+
+    /**
+     * Create a new speculator (not started yet)
+     *
+     * @param flagCountRange Range around the flags zombies are counted in
+     */
+    public WorldSpeculator( int flagCountRange )
+    {
+        super( "WorldSpeculator" );
+        setDaemon( true );
+
+        m_flagCountRange = flagCountRange;
+    }
+
+    /**
+     * Thread main loop: wait for requests and speculate.
+     */
+    @Override
+    public void run()
+    {
+        while( !isInterrupted() )
+        {
+            int requested = m_requested;
+            if( requested == m_finished )
+            {
+                LockSupport.park( this );
+                continue;
+            }
+
+            WorldSnapshot world = m_world;
+            m_world = null;
+            m_result = world.speculate( m_flagCountRange );
+            m_finished = requested;
+        }
+    }
+
+    /**
+     * Start guessing the tick after the given world, unless the speculator
+     * is still busy or already guessed that tick.
+     *
+     * @param world Snapshot of the current tick
+     */
+    synchronized void request( WorldSnapshot world )
+    {
+        if( !isIdle() )
+            return;
+
+        WorldSnapshot result = m_result;
+        if( result != null && result.getTick() == world.getTick() + 1 )
+            return;
+
+        m_world = world;
+        m_requested = m_requested + 1;
+        LockSupport.unpark( this );
+    }
+
+    /**
+     * Check if the speculator finished the last request
+     * @return true, if the speculator is not working
+     */
+    boolean isIdle()
+    {
+        return m_requested == m_finished;
+    }
+
+    /**
+     * Get the guess of a tick
+     *
+     * @param tick Tick the guess is needed for
+     * @return Guessed snapshot or null if there is no finished guess of this tick
+     */
+    WorldSnapshot getResult( int tick )
+    {
+        WorldSnapshot result = m_result;
+        return result != null && result.getTick() == tick ? result : null;
+    }
+}
@@ -0,0 +1,75 @@
+import core.ai.AiZombieInfo;
+
+/**
+ * Lightweight view on the result of a zombie range query
+ *
+ * The zombies of a query are not copied into an own array: the view only
+ * references a slice (offset, length) of the cache's per-turn index arena.
+ * A view can be reused for any number of queries, so iterating over the
+ * zombies in a range does not create any objects.
+ * @see ZombiesInRangeCache
+ *
+ * @note A view is only valid until the cache is reset for the next turn.
+ *
+ * @author Oskar Kirmis <kirmis@st.ovgu.de>
+ */
+final public class ZombieView
+{
+    //! Cache the view belongs to
+    private ZombiesInRangeCache m_cache = null;
+    //! Index arena containing the slice
+    private int[] m_indices = null;
+    //! Start of the slice in the arena
+    private int m_offset = 0;
+    //! Number of zombies in the slice
+    private int m_length = 0;
+
+    /**
+     * Point the view to a slice of an arena
+     *
+     * @param cache Cache the arena belongs to
+     * @param indices Index arena
+     * @param offset Start of the slice
+     * @param length Number of zombies
+     */
+    void set( ZombiesInRangeCache cache, int[] indices, int offset, int length )
+    {
+        m_cache   = cache;
+        m_indices = indices;
+        m_offset  = offset;
+        m_length  = length;
+    }
+
+    /**
+     * Get the number of zombies in the view
+     * @return Number of zombies
+     */
+    public int size()
+    {
+        return m_length;
+    }
+
+    /**
+     * Get the index of the i-th zombie (order of the game's zombie array)
+     *
+     * @param i Position in the view
+     * @return Index of the zombie in the current turn
+     */
+    public int getIndex( int i )
+    {
+        assert i >= 0 && i < m_length : "Invalid view position: " + i;
+
+        return m_indices[ m_offset + i ];
+    }
+
+    /**
+     * Get the zombie information of the i-th zombie
+     *
+     * @param i Position in the view
+     * @return Zombie information of the current turn
+     */
+    public AiZombieInfo getZombie( int i )
+    {
+        return m_cache.getZombie( getIndex( i ) );
+    }
+}
@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import core.Vector;
 import core.ai.AiMapInfo;
@@ -14,6 +13,11 @@ import core.ai.AiZombieInfo;
  * is called. Also cache the state for given ranges and positions so that
  * iterating over all zombies is not necessary every time.
  * 
+ * Caching only pays if the same queries are repeated within a turn. The
+ * hit ratio is tracked separately for queries around players and around
+ * flags; a class with too few hits bypasses the cache for a while and is
+ * probed again afterwards.
+ * 
  * @note This class is not required but it heavily improves the performance of
  *       General Purpose.
  * 
@@ -21,38 +25,116 @@ import core.ai.AiZombieInfo;
  */
 final public class ZombiesInRangeCache
 {
+    //! Initial number of slots of the query cache (has to be a power of two)
+    private static final int INITIAL_CAPACITY = 64;
+    
+    //! Query classes with an own caching policy: queries around a player...
+    public static final int QUERY_PLAYER = 0;
+    //! ...and queries around flags
+    public static final int QUERY_FLAG = 1;
+    private static final int NUM_QUERY_CLASSES = 2;
+    
+    //! Number of lookups after which the hit ratio of a class is evaluated
+    static final int PROBE_WINDOW = 256;
+    //! Minimum hit ratio for which the cache is worth using
+    static final float MIN_HIT_RATIO = 0.1f;
+    //! Number of queries the cache is bypassed before probing again
+    static final int BYPASS_QUERIES = 4096;
+    
     //! Internal zombie information map to be used for the current turn
     private AiMapInfo m_map = null;
-    //! Cache for zombie queries at a given position and range
-    private HashMap<String, AiZombieInfo[]> m_cache;
-    //! Copy of zombie info to avoid performance problems
+    //! Snapshot of the current turn (predicted positions and spatial index)
+    private WorldSnapshot m_world = null;
+    //! Spatial index over the predicted zombie positions
+    private SpatialGrid m_grid = null;
+    //! Copy of zombie info to avoid performance problems (queried on demand)
     private AiZombieInfo[] m_info = null;
+    //! Reused index buffer for index queries
+    private int[] m_indexBuffer = new int[ 0 ];
+    //! Per-turn arena holding the zombie indices of all cached results
+    private int[] m_arena = new int[ 0 ];
+    //! Used part of the arena in the current turn
+    private int m_arenaSize = 0;
+    
+    //! Query cache (open addressing): position and range of the cached queries
+    private float[] m_keyX;
+    private float[] m_keyY;
+    private int[]   m_keyRange;
+    //! Turn in which a slot was written; slots of older turns are empty
+    private int[]   m_slotTurn;
+    //! Exact number of zombies of a cached query or -1 if unknown
+    private int[]   m_count;
+    //! Known lower bound of the number of zombies (from early exits)
+    private int[]   m_atLeast;
+    //! Start of the complete result in the arena or -1 if only counted so far
+    private int[]   m_offset;
+    //! Number of slots used in the current turn
+    private int m_size = 0;
+    //! Current turn, used to invalidate all slots at once
+    private int m_turn = 1;
+    
+    //! Lookups and hits of every query class in the current probe window
+    private final int[] m_lookups = new int[ NUM_QUERY_CLASSES ];
+    private final int[] m_hits = new int[ NUM_QUERY_CLASSES ];
+    //! Remaining queries of every class that bypass the cache (0 = caching)
+    private final int[] m_bypass = new int[ NUM_QUERY_CLASSES ];
     
     /**
      * Construct a new empty zombies cache.
      */
     public ZombiesInRangeCache()
     {
-        m_cache = new HashMap<String, AiZombieInfo[]>();
+        allocateSlots( INITIAL_CAPACITY );
     }
     
     /**
-     * Reset the internal state of the cache (clear cached entries).
+     * Reset the internal state of the cache (clear cached entries) and use
+     * an already existing snapshot of the current turn.
      * This has to be done in every turn.
+     * @see SharedWorld
      * 
      * @param map Zombie information map used for the current turn
+     * @param world Snapshot of the same map
      */
-    public void reset( AiMapInfo map )
+    public void reset( AiMapInfo map, WorldSnapshot world )
     {
         assert map != null : "Zombie information map cannot be null";
         
+        resetWorld( map, world );
+    }
+    
+    /**
+     * Reset the internal state of the cache (clear cached entries) for a
+     * snapshot without the game's map (e.g. in simulations). Only the
+     * primitive queries (counts and indices) can be used then.
+     * 
+     * @param world Snapshot of the current turn
+     */
+    public void reset( WorldSnapshot world )
+    {
+        resetWorld( null, world );
+    }
+    
+    /**
+     * Common part of the reset() methods
+     */
+    private void resetWorld( AiMapInfo map, WorldSnapshot world )
+    {
+        assert world != null : "World snapshot cannot be null";
+        
         // Reset status information
-        m_map = map;
+        m_map   = map;
+        m_world = world;
+        m_grid  = world.getZombieGrid();
+        m_info  = null;
         
-        // Clear last cache
-        m_cache.clear();
+        // Clear last cache (all slots of the previous turn become invalid)
+        ++m_turn;
+        m_size = 0;
+        m_arenaSize = 0;
         
-        m_info = m_map.getZombies();
+        if( m_indexBuffer.length < world.getNumZombies() )
+            m_indexBuffer = new int[ world.getNumZombies() ];
     }
     
     /**
@@ -65,54 +147,497 @@ final public class ZombiesInRangeCache
      * @param pos Position from where to check the zombies in the range
      * @param range The radius of the circle around the position where to check for zombies
      * 
-     * @return An array containing all zombies in the given range around the given position.
+     * @return A (new) view on all zombies in the given range around the given position.
+     */
+    public ZombieView getZombiesInRange( Vector pos, int range )
+    {
+        return getZombiesInRange( pos.x, pos.y, range, new ZombieView() );
+    }
+    
+    /**
+     * Query the zombies for a given position and range without creating any
+     * objects: the result is a slice of the cache's index arena, the given
+     * view is pointed to it. Counted as a QUERY_PLAYER query.
+     * @see getZombiesInRange( Vector, int )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param view View to reuse (valid until the next reset())
+     * 
+     * @return The given view
      */
-    public AiZombieInfo[] getZombiesInRange( Vector pos, int range )
+    public ZombieView getZombiesInRange( float x, float y, int range, ZombieView view )
     {
-        String key = ZombiesInRangeCache.createKey( pos, range );
+        return getZombiesInRange( x, y, range, view, QUERY_PLAYER );
+    }
+    
+    /**
+     * Query the zombies for a given position and range without creating any
+     * objects. The cache is only used if it pays off for the given class
+     * of queries.
+     * @see getZombiesInRange( float, float, int, ZombieView )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param view View to reuse (valid until the next reset())
+     * @param queryClass QUERY_PLAYER or QUERY_FLAG
+     * 
+     * @return The given view
+     */
+    public ZombieView getZombiesInRange( float x, float y, int range, ZombieView view, int queryClass )
+    {
+        // Not worth caching? -> only store the slice
+        if( bypass( queryClass ) )
+        {
+            int offset = m_arenaSize;
+            int count = collect( x, y, range );
+            view.set( this, m_arena, offset, count );
+            return view;
+        }
+        
+        int slot = findSlot( x, y, range );
         
         // Was this already cache for the current turn?
-        if( m_cache.containsKey( key ) )
+        boolean hit = m_offset[ slot ] >= 0;
+        record( queryClass, hit );
+        if( !hit )
         {
-            // Yes -> so return the cached values
-            return m_cache.get( key );
+            // Nope -> we have to query the information
+            // Cache slice until next update
+            m_offset[ slot ] = m_arenaSize;
+            m_count[ slot ]  = collect( x, y, range );
         }
-        else
+        
+        view.set( this, m_arena, m_offset[ slot ], m_count[ slot ] );
+        return view;
+    }
+    
+    /**
+     * Get the number of zombies in a given range around a given position.
+     * Shares the cache with getZombiesInRange() but does not create any
+     * objects, so use it if the zombies themselves are not required.
+     * 
+     * @param pos Position from where to check the zombies in the range
+     * @param range The radius of the circle around the position where to check for zombies
+     * 
+     * @return Number of zombies in the given range around the given position
+     */
+    public int countZombiesInRange( Vector pos, int range )
+    {
+        return countZombiesInRange( pos.x, pos.y, range );
+    }
+    
+    /**
+     * Get the number of zombies in a given range around a given position.
+     * Counted as a QUERY_PLAYER query.
+     * @see countZombiesInRange( Vector, int )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * 
+     * @return Number of zombies in the given range around the given position
+     */
+    public int countZombiesInRange( float x, float y, int range )
+    {
+        return countZombiesInRange( x, y, range, QUERY_PLAYER );
+    }
+    
+    /**
+     * Get the number of zombies in a given range around a given position.
+     * The cache is only used if it pays off for the given class of queries.
+     * @see countZombiesInRange( Vector, int )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param queryClass QUERY_PLAYER or QUERY_FLAG
+     * 
+     * @return Number of zombies in the given range around the given position
+     */
+    public int countZombiesInRange( float x, float y, int range, int queryClass )
+    {
+        if( bypass( queryClass ) )
+            return m_grid.countInRange( x, y, range );
+        
+        int slot = findSlot( x, y, range );
+        
+        // Already counted (or queried) in this turn?
+        boolean hit = m_count[ slot ] >= 0;
+        record( queryClass, hit );
+        if( hit )
+            return m_count[ slot ];
+        
+        int count = m_grid.countInRange( x, y, range );
+        
+        m_count[ slot ] = count;
+        
+        return count;
+    }
+    
+    /**
+     * Check if there are at least k zombies in a given range around a
+     * given position. The zombies are only iterated until the k-th zombie
+     * was found. Like countZombiesInRange() no objects are created.
+     * 
+     * @param pos Position from where to check the zombies in the range
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param k Minimum number of zombies
+     * 
+     * @return true, if there are k or more zombies in the range
+     */
+    public boolean hasAtLeast( Vector pos, int range, int k )
+    {
+        return hasAtLeast( pos.x, pos.y, range, k );
+    }
+    
+    /**
+     * Check if there are at least k zombies in a given range around a
+     * given position. Counted as a QUERY_PLAYER query.
+     * @see hasAtLeast( Vector, int, int )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param k Minimum number of zombies
+     * 
+     * @return true, if there are k or more zombies in the range
+     */
+    public boolean hasAtLeast( float x, float y, int range, int k )
+    {
+        return hasAtLeast( x, y, range, k, QUERY_PLAYER );
+    }
+    
+    /**
+     * Check if there are at least k zombies in a given range around a
+     * given position. The cache is only used if it pays off for the given
+     * class of queries.
+     * @see hasAtLeast( Vector, int, int )
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range The radius of the circle around the position where to check for zombies
+     * @param k Minimum number of zombies
+     * @param queryClass QUERY_PLAYER or QUERY_FLAG
+     * 
+     * @return true, if there are k or more zombies in the range
+     */
+    public boolean hasAtLeast( float x, float y, int range, int k, int queryClass )
+    {
+        if( bypass( queryClass ) )
+            return m_grid.countAtMost( x, y, range, k ) >= k;
+        
+        int slot = findSlot( x, y, range );
+        
+        // Can this be answered by what we already know?
+        boolean hit = m_count[ slot ] >= 0 || m_atLeast[ slot ] >= k;
+        record( queryClass, hit );
+        if( m_count[ slot ] >= 0 )
+            return m_count[ slot ] >= k;
+        if( m_atLeast[ slot ] >= k )
+            return true;
+        
+        int count = m_grid.countAtMost( x, y, range, k );
+        
+        if( count >= k )
         {
-            // Nope -> we have to query the information
-            ArrayList<AiZombieInfo> info = new ArrayList<AiZombieInfo>();
-            for( int i = 0; i < m_info.length; ++i )
-            {
-                if( m_info[ i ].getPosition().add( 
-                        m_info[ i ].getMovement() ).sub( pos ).length() <= range )
-                    info.add( m_info[ i ] );
-            }
+            // Early exit -> only a lower bound is known
+            m_atLeast[ slot ] = count;
+            return true;
+        }
+        
+        // All zombies were checked -> this is the exact number
+        m_count[ slot ] = count;
+        return false;
+    }
+    
+    /**
+     * Count the zombies around several positions. Every position is one
+     * countZombiesInRange() query of the QUERY_FLAG class, so only the grid
+     * cells around it are looked at and repeated positions are answered by
+     * the cache. No result arrays are created.
+     * 
+     * @param queryX x coordinates of the query positions
+     * @param queryY y coordinates of the query positions
+     * @param numQueries Number of valid entries in the query arrays
+     * @param range The radius of the circles around the positions
+     * @param counts Output array receiving the number of zombies for every query
+     */
+    public void countZombiesInRanges( float[] queryX, float[] queryY, int numQueries,
+                                      int range, int[] counts )
+    {
+        assert queryX.length >= numQueries && queryY.length >= numQueries : "Too few query positions";
+        assert counts.length >= numQueries : "Output array too small";
+        
+        for( int q = 0; q < numQueries; ++q )
+            counts[ q ] = countZombiesInRange( queryX[ q ], queryY[ q ], range, QUERY_FLAG );
+    }
+    
+    /**
+     * Collect the indices of the zombies around several positions (one
+     * grid query per position, the cache is not used).
+     * The result is stored in an internal buffer which is reused for
+     * every call (so it is only valid until the next call).
+     * The indices for query q are stored in the range
+     * [ offsets[ q ], offsets[ q + 1 ] ) of the returned buffer.
+     * 
+     * @param queryX x coordinates of the query positions
+     * @param queryY y coordinates of the query positions
+     * @param numQueries Number of valid entries in the query arrays
+     * @param range The radius of the circles around the positions
+     * @param offsets Output array (size >= numQueries + 1) receiving the start offsets
+     * 
+     * @return Buffer containing the zombie indices of all queries
+     * @see getZombie()
+     */
+    public int[] collectZombiesInRanges( float[] queryX, float[] queryY, int numQueries,
+                                         int range, int[] offsets )
+    {
+        assert queryX.length >= numQueries && queryY.length >= numQueries : "Too few query positions";
+        assert offsets.length > numQueries : "Offset array too small";
+        
+        int numZombies = m_world.getNumZombies();
+        
+        // Fill the buffer query by query, it grows if a query could overflow it
+        offsets[ 0 ] = 0;
+        for( int q = 0; q < numQueries; ++q )
+        {
+            if( m_indexBuffer.length - offsets[ q ] < numZombies )
+                m_indexBuffer = Arrays.copyOf( m_indexBuffer,
+                        Math.max( offsets[ q ] + numZombies, m_indexBuffer.length * 2 ) );
             
-            // List to array
-            AiZombieInfo[] zbInfo = new AiZombieInfo[ info.size() ];
-            for( int i = 0; i < info.size(); ++i )
-                zbInfo[ i ] = info.get( i );
-
-            // Cache list until next update
-            m_cache.put( key, zbInfo );
+            offsets[ q + 1 ] = offsets[ q ] + m_grid.collectInRange(
+                    queryX[ q ], queryY[ q ], range, m_indexBuffer, offsets[ q ] );
+        }
+        
+        return m_indexBuffer;
+    }
+    
+    /**
+     * Get the zombie information for an index returned by collectZombiesInRanges()
+     * or a ZombieView.
+     * 
+     * @param index Index of the zombie in the current turn
+     * @return Zombie information of the current turn
+     */
+    public AiZombieInfo getZombie( int index )
+    {
+        assert index >= 0 && index < m_world.getNumZombies() : "Invalid zombie index: " + index;
+        
+        assert m_map != null : "Zombie objects are not available for a snapshot without map";
+        
+        // The zombie objects are only needed for full queries
+        if( m_info == null )
+            m_info = m_map.getZombies();
+        
+        return m_info[ index ];
+    }
+    
+    /**
+     * Check if the cache is currently bypassed for a class of queries
+     * 
+     * @param queryClass QUERY_PLAYER or QUERY_FLAG
+     * @return true, if queries of the class are answered without the cache
+     */
+    public boolean isBypassed( int queryClass )
+    {
+        return m_bypass[ queryClass ] > 0;
+    }
+    
+    /**
+     * Get the number of queries cached in the current turn
+     * @return Number of used cache slots
+     */
+    public int getNumEntries()
+    {
+        return m_size;
+    }
+    
+    /**
+     * Get the (approximate) number of bytes held by the cache: slot
+     * arrays, result arena and index buffer.
+     * 
+     * @return Memory footprint in bytes
+     */
+    public long getFootprintBytes()
+    {
+        // Seven 4 byte values per slot
+        return 7L * 4 * m_slotTurn.length
+                + 4L * m_arena.length
+                + 4L * m_indexBuffer.length;
+    }
+    
+    /**
+     * Collect the zombies of a query into the arena (sorted in the order of
+     * the game's zombie array).
+     * 
+     * @return Number of zombies, the slice starts at the old arena size
+     */
+    private int collect( float x, float y, int range )
+    {
+        int numZombies = m_world.getNumZombies();
+        if( m_arena.length - m_arenaSize < numZombies )
+            m_arena = Arrays.copyOf( m_arena, Math.max( m_arenaSize + numZombies, m_arena.length * 2 ) );
+        
+        int count = m_grid.collectInRange( x, y, range, m_arena, m_arenaSize );
+        
+        // Keep the order of the game's zombie array
+        Arrays.sort( m_arena, m_arenaSize, m_arenaSize + count );
+        
+        m_arenaSize += count;
+        return count;
+    }
+    
+    /**
+     * Decide whether a query of the given class bypasses the cache. After
+     * a bypass period the cache is used again to probe the hit ratio.
+     * 
+     * @param queryClass Class of the query
+     * @return true, if the cache should not be used
+     */
+    private boolean bypass( int queryClass )
+    {
+        if( m_bypass[ queryClass ] == 0 )
+            return false;
+        
+        --m_bypass[ queryClass ];
+        return true;
+    }
+    
+    /**
+     * Record a cache lookup and disable the cache for the class if its
+     * hit ratio in the probe window was too low.
+     * 
+     * @param queryClass Class of the query
+     * @param hit Was the query answered from the cache?
+     */
+    private void record( int queryClass, boolean hit )
+    {
+        ++m_lookups[ queryClass ];
+        if( hit )
+            ++m_hits[ queryClass ];
+        
+        if( m_lookups[ queryClass ] < PROBE_WINDOW )
+            return;
+        
+        if( m_hits[ queryClass ] < MIN_HIT_RATIO * m_lookups[ queryClass ] )
+            m_bypass[ queryClass ] = BYPASS_QUERIES;
+        
+        m_lookups[ queryClass ] = 0;
+        m_hits[ queryClass ] = 0;
+    }
+    
+    /**
+     * Find the cache slot for a given position and range. If the query
+     * was not cached in the current turn, a new empty slot is created.
+     * 
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range Range of the query
+     * 
+     * @return Index of the slot in the cache arrays
+     */
+    private int findSlot( float x, float y, int range )
+    {
+        // Keep the load factor below 1/2 to keep probe sequences short
+        if( ( m_size + 1 ) * 2 > m_slotTurn.length )
+            grow();
+        
+        int mask = m_slotTurn.length - 1;
+        int slot = ZombiesInRangeCache.hash( x, y, range ) & mask;
+        
+        while( m_slotTurn[ slot ] == m_turn )
+        {
+            if( m_keyX[ slot ] == x && m_keyY[ slot ] == y && m_keyRange[ slot ] == range )
+                return slot;
             
-            return zbInfo;
+            slot = ( slot + 1 ) & mask;
         }
+        
+        // Not cached yet -> claim the empty slot
+        m_slotTurn[ slot ] = m_turn;
+        m_keyX[ slot ]     = x;
+        m_keyY[ slot ]     = y;
+        m_keyRange[ slot ] = range;
+        m_count[ slot ]    = -1;
+        m_atLeast[ slot ]  = 0;
+        m_offset[ slot ]   = -1;
+        ++m_size;
+        
+        return slot;
     }
     
     /**
-     * Create a string that is unique for a given position and a given range.
-     * This will be used as the key for the cache map.
+     * Double the number of slots and insert the entries of the current turn again.
+     */
+    private void grow()
+    {
+        float[] keyX             = m_keyX;
+        float[] keyY             = m_keyY;
+        int[]   keyRange         = m_keyRange;
+        int[]   slotTurn         = m_slotTurn;
+        int[]   count            = m_count;
+        int[]   atLeast          = m_atLeast;
+        int[]   offset           = m_offset;
+        
+        allocateSlots( slotTurn.length * 2 );
+        int mask = m_slotTurn.length - 1;
+        
+        for( int i = 0; i < slotTurn.length; ++i )
+        {
+            if( slotTurn[ i ] != m_turn )
+                continue;
+            
+            int slot = ZombiesInRangeCache.hash( keyX[ i ], keyY[ i ], keyRange[ i ] ) & mask;
+            while( m_slotTurn[ slot ] == m_turn )
+                slot = ( slot + 1 ) & mask;
+            
+            m_slotTurn[ slot ] = m_turn;
+            m_keyX[ slot ]     = keyX[ i ];
+            m_keyY[ slot ]     = keyY[ i ];
+            m_keyRange[ slot ] = keyRange[ i ];
+            m_count[ slot ]    = count[ i ];
+            m_atLeast[ slot ]  = atLeast[ i ];
+            m_offset[ slot ]   = offset[ i ];
+        }
+    }
+    
+    /**
+     * Create empty slot arrays with the given capacity.
+     * 
+     * @param capacity Number of slots (has to be a power of two)
+     */
+    private void allocateSlots( int capacity )
+    {
+        m_keyX     = new float[ capacity ];
+        m_keyY     = new float[ capacity ];
+        m_keyRange = new int[ capacity ];
+        m_slotTurn = new int[ capacity ];
+        m_count    = new int[ capacity ];
+        m_atLeast  = new int[ capacity ];
+        m_offset   = new int[ capacity ];
+    }
+    
+    /**
+     * Create a hash code for a given position and a given range.
+     * This replaces the string keys that were used before, so that
+     * no objects have to be created to look up a query.
      * 
-     * @param pos Position to get the key for
-     * @param range Range to get the key for
+     * @param x x coordinate of the position
+     * @param y y coordinate of the position
+     * @param range Range of the query
      * 
-     * @return A unique key for the position and the range
+     * @return Hash code of the position and the range
      */
-    private static String createKey( Vector pos, int range )
+    private static int hash( float x, float y, int range )
     {
-        // For example, position (10,8) with range 20 creates the
-        // key "10/8/20"
-        return pos.x + "/" + pos.y + "/" + range;
+        int h = Float.floatToIntBits( x );
+        h = h * 31 + Float.floatToIntBits( y );
+        h = h * 31 + range;
+        
+        // Spread the higher bits, the slot index only uses the lower ones
+        return h ^ ( h >>> 16 );
     }
-}
\ No newline at end of file
+}